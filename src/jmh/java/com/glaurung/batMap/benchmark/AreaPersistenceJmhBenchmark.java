@@ -0,0 +1,85 @@
+package com.glaurung.batMap.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.gui.MapperLayout;
+import com.glaurung.batMap.io.AreaCache;
+import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * AreaDataPersister.save and loadData for small, medium and huge grid areas. Every save changes the notes
+ * of one room, so it measures a journal append plus taking and comparing the snapshot. Load empties the
+ * area cache first and includes replaying the journal, loadCached is a cache hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AreaPersistenceJmhBenchmark {
+
+    private static final String AREA = "persisted";
+
+    /**
+     * rooms per side: 100, 5041 and 50176 rooms
+     */
+    @Param({ "10", "71", "224" })
+    int side;
+
+    private File basedir;
+    private AreaSaveObject area;
+    private MapperLayout layout;
+    private Room room;
+    private int saves = 0;
+
+    @Setup(Level.Trial)
+    public void makeArea() throws Exception {
+        basedir = BenchmarkAreas.tempBaseDir();
+        area = BenchmarkAreas.grid( AREA, side, new Random( BenchmarkAreas.SEED ) );
+        layout = BenchmarkAreas.layoutFor( area );
+        AreaDataPersister.save( basedir.getPath(), area.getGraph(), layout );
+        room = area.getGraph().getVertices().iterator().next();
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() {
+        BenchmarkAreas.delete( basedir );
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        room.setNotes( "save " + saves++ );
+        AreaDataPersister.save( basedir.getPath(), area.getGraph(), layout );
+    }
+
+    @Benchmark
+    public AreaSaveObject load() throws Exception {
+        AreaCache.forBaseDir( basedir.getPath() ).clear();
+        return AreaDataPersister.loadData( basedir.getPath(), AREA );
+    }
+
+    @Benchmark
+    public AreaSaveObject loadCached() throws Exception {
+        return AreaDataPersister.loadData( basedir.getPath(), AREA );
+    }
+
+}
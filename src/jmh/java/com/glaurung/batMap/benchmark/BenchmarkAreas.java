@@ -0,0 +1,116 @@
+package com.glaurung.batMap.benchmark;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.glaurung.batMap.gui.MapperLayout;
+import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Areas for the benchmarks, always built from the same seed so results compare between releases.
+ */
+public class BenchmarkAreas {
+
+    public static final long SEED = 20240501L;
+
+    private static final String[] WORDS = { "street", "cobbles", "lantern", "fountain", "market", "shutters", "alley",
+            "tower", "guard", "merchant", "puddle", "chimney", "gate", "tavern", "well", "statue" };
+
+    /**
+     * @return side x side grid with exits both ways between neighbours, room (0,0) being the entrance
+     */
+    public static AreaSaveObject grid( String areaName, int side, Random random ) {
+        Area area = new Area( areaName );
+        AreaSaveObject saveObject = new AreaSaveObject();
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Room[][] rooms = new Room[side][side];
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                Room room = new Room( sentence( random, 3 ), roomId( areaName, x, y ), area );
+                room.setLongDesc( sentence( random, 40 ) );
+                room.setIndoors( random.nextInt( 4 ) == 0 );
+                room.setAreaEntrance( x == 0 && y == 0 );
+                graph.addVertex( room );
+                saveObject.getLocations().put( room, new Point2D.Double( x * 180, y * 180 ) );
+                rooms[x][y] = room;
+            }
+        }
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                if (x + 1 < side) {
+                    connect( graph, rooms[x][y], rooms[x + 1][y], "east", "west" );
+                }
+                if (y + 1 < side) {
+                    connect( graph, rooms[x][y], rooms[x][y + 1], "south", "north" );
+                }
+            }
+        }
+        return saveObject;
+    }
+
+    public static String roomId( String areaName, int x, int y ) {
+        return areaName + ":" + x + "," + y;
+    }
+
+    public static MapperLayout layoutFor( AreaSaveObject saveObject ) {
+        MapperLayout layout = new MapperLayout( saveObject.getGraph() );
+        layout.displayLoadedData( saveObject );
+        return layout;
+    }
+
+    public static File tempBaseDir() throws IOException {
+        File basedir = Files.createTempDirectory( "batmap-jmh" ).toFile();
+        new File( new File( basedir, "conf" ), "batMapAreas" ).mkdirs();
+        return basedir;
+    }
+
+    /**
+     * Saves count grid areas named area0, area1... into basedir.
+     */
+    public static void writeAreas( File basedir, int count, int side, Random random ) throws IOException {
+        for (int i = 0; i < count; i++) {
+            AreaSaveObject saveObject = grid( "area" + i, side, random );
+            AreaDataPersister.save( basedir.getPath(), saveObject.getGraph(), layoutFor( saveObject ) );
+        }
+    }
+
+    public static void delete( File file ) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+    static String sentence( Random random, int words ) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append( ' ' );
+            }
+            text.append( WORDS[random.nextInt( WORDS.length )] );
+        }
+        return text.toString();
+    }
+
+    private static void connect( SparseMultigraph<Room, Exit> graph, Room from, Room to, String exit, String back ) {
+        from.addExit( exit );
+        to.addExit( back );
+        graph.addEdge( new Exit( exit ), new Pair<Room>( from, to ), EdgeType.DIRECTED );
+        graph.addEdge( new Exit( back ), new Pair<Room>( to, from ), EdgeType.DIRECTED );
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.glaurung.batMap.benchmark;
+
+import java.awt.Dimension;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.gui.MapperLayout;
+import com.glaurung.batMap.vo.AreaSaveObject;
+
+/**
+ * MapperLayout.initialize, laying a whole grid area out again from its entrance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xss16m" })
+public class LayoutBenchmark {
+
+    /**
+     * rooms per side: 961 and 5041 rooms
+     */
+    @Param({ "31", "71" })
+    int side;
+
+    private MapperLayout layout;
+
+    @Setup(Level.Trial)
+    public void makeArea() {
+        AreaSaveObject area = BenchmarkAreas.grid( "layout", side, new Random( BenchmarkAreas.SEED ) );
+        layout = new MapperLayout( area.getGraph() );
+        layout.setSize( new Dimension( 500, 500 ) );
+    }
+
+    @Benchmark
+    public MapperLayout initialize() {
+        layout.initialize();
+        return layout;
+    }
+
+}
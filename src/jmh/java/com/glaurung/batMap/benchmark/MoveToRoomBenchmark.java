@@ -0,0 +1,107 @@
+package com.glaurung.batMap.benchmark;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.controller.MapperEngine;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * MapperEngine.moveToRoom along a seeded random walk over a grid. Every iteration starts from an empty
+ * area, so it first maps new rooms and then mostly walks through known ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MoveToRoomBenchmark {
+
+    private static final String AREA = "walk";
+    private static final int WALK_LENGTH = 20000;
+    private static final String[] DIRS = { "north", "east", "south", "west" };
+    private static final int[] DX = { 0, 1, 0, - 1 };
+    private static final int[] DY = { - 1, 0, 1, 0 };
+
+    @Param({ "30", "100" })
+    int side;
+
+    private File basedir;
+    private MapperEngine engine;
+    private String[] ids = new String[WALK_LENGTH];
+    private String[] exitsUsed = new String[WALK_LENGTH];
+    private String[] shortDescs = new String[WALK_LENGTH];
+    private String[] longDescs = new String[WALK_LENGTH];
+    private Set<String>[] exits;
+    private int step;
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void makeWalk() throws Exception {
+        basedir = BenchmarkAreas.tempBaseDir();
+        Random random = new Random( BenchmarkAreas.SEED );
+        exits = new Set[WALK_LENGTH];
+        int x = 0, y = 0;
+        String used = "enter";
+        for (int i = 0; i < WALK_LENGTH; i++) {
+            ids[i] = BenchmarkAreas.roomId( AREA, x, y );
+            exitsUsed[i] = used;
+            shortDescs[i] = "Room " + x + "," + y;
+            longDescs[i] = BenchmarkAreas.sentence( new Random( x * 31L + y ), 40 );
+            exits[i] = new HashSet<String>();
+            for (int d = 0; d < DIRS.length; d++) {
+                if (inside( x + DX[d], y + DY[d] )) {
+                    exits[i].add( DIRS[d] );
+                }
+            }
+            int d;
+            do {
+                d = random.nextInt( DIRS.length );
+            } while (! inside( x + DX[d], y + DY[d] ));
+            x += DX[d];
+            y += DY[d];
+            used = DIRS[d];
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newEngine() {
+        engine = new MapperEngine( null, false );
+        engine.setBaseDir( basedir.getPath() );
+        step = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() {
+        BenchmarkAreas.delete( basedir );
+    }
+
+    @Benchmark
+    public void moveToRoom() {
+        int i = step++ % WALK_LENGTH;
+        engine.moveToRoom( AREA, ids[i], exitsUsed[i], false, shortDescs[i], longDescs[i], exits[i] );
+    }
+
+    private boolean inside( int x, int y ) {
+        return x >= 0 && y >= 0 && x < side && y < side;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.glaurung.batMap.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.controller.MapperEngine;
+import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * MapperEngine.checkDirsFromCurrentRoomTo from the entrance of a grid area to seeded random rooms, both
+ * answered from the cached search tree and with the tree thrown away before every query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PathingBenchmark {
+
+    private static final String AREA = "paths";
+
+    @Param({ "30", "100" })
+    int side;
+
+    private File basedir;
+    private MapperEngine engine;
+    private List<Room> targets;
+    private int target;
+
+    @Setup(Level.Trial)
+    public void loadArea() throws Exception {
+        basedir = BenchmarkAreas.tempBaseDir();
+        Random random = new Random( BenchmarkAreas.SEED );
+        AreaSaveObject area = BenchmarkAreas.grid( AREA, side, random );
+        AreaDataPersister.save( basedir.getPath(), area.getGraph(), BenchmarkAreas.layoutFor( area ) );
+
+        engine = new MapperEngine( null, false );
+        engine.setBaseDir( basedir.getPath() );
+        engine.moveToRoom( AREA, BenchmarkAreas.roomId( AREA, 0, 0 ), "enter", false, "", "", new HashSet<String>() );
+        targets = new ArrayList<Room>( engine.getGraph().getVertices() );
+        Collections.sort( targets, new Comparator<Room>() {
+            @Override
+            public int compare( Room a, Room b ) {
+                return a.getId().compareTo( b.getId() );
+            }
+        } );
+        Collections.shuffle( targets, random );
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() {
+        BenchmarkAreas.delete( basedir );
+    }
+
+    @Benchmark
+    public String cachedTree() {
+        return engine.checkDirsFromCurrentRoomTo( targets.get( target++ % targets.size() ), false );
+    }
+
+    @Benchmark
+    public String afterGraphChange() {
+        engine.getPathFinder().invalidate();
+        return engine.checkDirsFromCurrentRoomTo( targets.get( target++ % targets.size() ), false );
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.glaurung.batMap.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.Icon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.gui.RoomColors;
+import com.glaurung.batMap.gui.RoomIconTransformer;
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * Paints room icons of seeded random rooms into an offscreen image, as one frame of a big map would.
+ * The cold variant starts every frame with an empty icon cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RoomIconPaintBenchmark {
+
+    private static final String[] EXITS = { "n", "ne", "e", "se", "s", "sw", "w", "nw", "u", "d", "portal" };
+    private static final Color[] COLORS = { null, null, null, RoomColors.RED, RoomColors.BLUE, RoomColors.YELLOW };
+
+    @Param({ "2000" })
+    int rooms;
+
+    private Room[] painted;
+    private RoomIconTransformer transformer;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void makeRooms() {
+        Random random = new Random( BenchmarkAreas.SEED );
+        Area area = new Area( "icons" );
+        painted = new Room[rooms];
+        for (int i = 0; i < rooms; i++) {
+            Room room = new Room( "room " + i, "icons:" + i, area );
+            HashSet<String> exits = new HashSet<String>();
+            for (int e = random.nextInt( 5 ); e >= 0; e--) {
+                exits.add( EXITS[random.nextInt( EXITS.length )] );
+            }
+            room.setExits( exits );
+            room.setIndoors( random.nextBoolean() );
+            room.setColor( COLORS[random.nextInt( COLORS.length )] );
+            room.setPicked( random.nextInt( 50 ) == 0 );
+            painted[i] = room;
+        }
+        painted[0].setCurrent( true );
+        transformer = new RoomIconTransformer();
+        image = new BufferedImage( 1600, 1200, BufferedImage.TYPE_INT_RGB );
+        graphics = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        return paintWith( transformer );
+    }
+
+    @Benchmark
+    public BufferedImage paintColdCache() {
+        return paintWith( new RoomIconTransformer() );
+    }
+
+    private BufferedImage paintWith( RoomIconTransformer icons ) {
+        for (int i = 0; i < painted.length; i++) {
+            Icon icon = icons.transform( painted[i] );
+            icon.paintIcon( null, graphics, ( i % 16 ) * 100, ( ( i / 16 ) % 12 ) * 100 );
+        }
+        return image;
+    }
+
+}
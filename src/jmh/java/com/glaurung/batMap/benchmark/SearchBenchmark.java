@@ -0,0 +1,69 @@
+package com.glaurung.batMap.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glaurung.batMap.controller.SearchEngine;
+import com.glaurung.batMap.gui.search.SearchPanel;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+
+/**
+ * SearchPanel.searchForRoomsWith over a number of saved 400 room areas, cycling through queries that
+ * match often, rarely and never.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SearchBenchmark {
+
+    private static final String[] QUERIES = { "fountain", "market gate", "Tavern well statue", "xyzzy" };
+
+    @Param({ "10", "100" })
+    int areas;
+
+    private File basedir;
+    private SearchPanel panel;
+    private int query;
+
+    @Setup(Level.Trial)
+    public void writeAreas() throws Exception {
+        basedir = BenchmarkAreas.tempBaseDir();
+        BenchmarkAreas.writeAreas( basedir, areas, 20, new Random( BenchmarkAreas.SEED ) );
+        SearchEngine engine = new SearchEngine( new SparseMultigraph<Room, Exit>(), null );
+        engine.setBaseDir( basedir.getPath() );
+        panel = new SearchPanel( engine );
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() {
+        BenchmarkAreas.delete( basedir );
+    }
+
+    @Benchmark
+    public List<String> search() {
+        return panel.searchForRoomsWith( QUERIES[query++ % QUERIES.length] );
+    }
+
+}
@@ -2,6 +2,7 @@ package com.glaurung.batMap.controller;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Paint;
 import java.awt.Point;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
@@ -12,17 +13,24 @@ import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.util.*;
 
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.collections15.Transformer;
+
 import com.glaurung.batMap.gui.*;
 import com.glaurung.batMap.gui.corpses.CorpsePanel;
+import com.glaurung.batMap.io.AreaCache;
 import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.io.AreaSaver;
+import com.glaurung.batMap.io.AreaSnapshot;
 import com.glaurung.batMap.io.GuiDataPersister;
+import com.glaurung.batMap.io.WorldGraph;
 import com.glaurung.batMap.vo.Area;
 import com.glaurung.batMap.vo.AreaSaveObject;
 import com.glaurung.batMap.vo.Exit;
 import com.glaurung.batMap.vo.Room;
 import com.mythicscape.batclient.interfaces.BatWindow;
 
-import edu.uci.ics.jung.algorithms.shortestpath.DijkstraShortestPath;
 import edu.uci.ics.jung.graph.SparseMultigraph;
 import edu.uci.ics.jung.graph.util.EdgeType;
 import edu.uci.ics.jung.graph.util.Pair;
@@ -38,17 +46,30 @@ import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
 import edu.uci.ics.jung.visualization.picking.PickedState;
 import edu.uci.ics.jung.visualization.transform.MutableTransformer;
 
+/**
+ * Keeps the graph and room locations of the current area and maps protocol events into it. The view
+ * (VisualizationViewer, mouse plugins and MapperPanel) is optional: a headless engine does the same
+ * graph, layout, saving and pathing work without touching AWT, for batch imports, replays and benchmarks.
+ */
 public class MapperEngine implements ItemListener, ComponentListener {
 
+    private static final String DEFAULT_DELIM = ";";
 
     SparseMultigraph<Room, Exit> graph;
     VisualizationViewer<Room, Exit> vv;
     MapperLayout mapperLayout;
     Room currentRoom = null;
     Area area = null;
+    private Area savedArea = null;
+    private long savedGeneration = 0;
     MapperPanel panel;
 
     PickedState<Room> pickedState;
+    /**
+     * nesting depth of {@link #beginSelection()}, picks inside a batch repaint only when it ends
+     */
+    private int selectionBatch = 0;
+    private boolean selectionChanged = false;
     String baseDir;
     BatWindow batWindow;
     ScalingGraphMousePlugin scaler;
@@ -58,20 +79,59 @@ public class MapperEngine implements ItemListener, ComponentListener {
     MapperPlugin plugin;
     boolean mazemode = false;
     boolean reversableDirsMode = false;
+    MapperIngest ingest;
+    RoomIndex roomIndex = new RoomIndex();
+    PathFinder pathFinder = new PathFinder();
+    RenderDetail renderDetail = new RenderDetail();
+    RoomIconTransformer roomIconTransformer;
+    CullingRenderer<Room, Exit> cullingRenderer;
+    TiledRenderer tiledRenderer;
+    RepaintScheduler repaintScheduler;
+    /**
+     * Held by the mapper thread while it mutates the graph or room locations, and by the renderer while painting.
+     */
+    protected final Object graphLock = new Object();
 
     public MapperEngine( SparseMultigraph<Room, Exit> graph, MapperPlugin plugin ) {
         this(plugin);
         this.graph = graph;
         this.mapperLayout.setGraph( graph );
+        this.roomIndex.rebuild( graph.getVertices() );
     }
 
 
     public MapperEngine(MapperPlugin plugin) {
+        this( plugin, true );
+    }
+
+    /**
+     * @param plugin   may be null when not running inside the client
+     * @param withView false for a headless engine, see {@link #attachView()}
+     */
+    public MapperEngine( MapperPlugin plugin, boolean withView ) {
         this.plugin = plugin;
         graph = new SparseMultigraph<Room, Exit>();
         mapperLayout = new MapperLayout( graph );
         mapperLayout.setSize( new Dimension( 500, 500 ) ); //????
+        if (withView) {
+            attachView();
+        }
+    }
+
+    /**
+     * Builds the map view on top of the engine. Headless engines can attach one later, before events
+     * are fed to them.
+     */
+    public void attachView() {
+        if (vv != null) {
+            return;
+        }
+        roomIconTransformer = new RoomIconTransformer( renderDetail );
         vv = new VisualizationViewer<Room, Exit>( mapperLayout );
+        cullingRenderer = new CullingRenderer<Room, Exit>( vv.getRenderer(), renderDetail );
+        tiledRenderer = new TiledRenderer( cullingRenderer, renderDetail, mapperLayout, roomIconTransformer );
+        vv.setRenderer( new LockingRenderer<Room, Exit>( tiledRenderer, graphLock ) );
+        vv.setPickSupport( new GridPickSupport( vv, mapperLayout ) );
         pickedState = vv.getPickedVertexState();
         pickedState.addItemListener( this );
         vv.setPreferredSize( new Dimension( 500, 500 ) ); //????
@@ -81,10 +141,16 @@ public class MapperEngine implements ItemListener, ComponentListener {
         rc.setEdgeLabelRenderer( new ExitLabelRenderer() );
         rc.setEdgeShapeTransformer( new EdgeShape.QuadCurve<Room, Exit>() );
         rc.setEdgeShapeTransformer( new EdgeShape.Wedge<Room, Exit>( 30 ) );
-        rc.setEdgeFillPaintTransformer( new ExitPaintTransformer( vv ) );
-
-        rc.setVertexShapeTransformer( new RoomShape( graph ) );
-        rc.setVertexIconTransformer( new RoomIconTransformer() );
+        rc.setEdgeFillPaintTransformer( new ExitPaintTransformer( vv, renderDetail ) );
+
+        rc.setVertexShapeTransformer( new RoomShape() );
+        rc.setVertexIconTransformer( roomIconTransformer );
+        rc.setVertexFillPaintTransformer( new Transformer<Room, Paint>() {
+            @Override
+            public Paint transform( Room room ) {
+                return RoomIconTransformer.getFillColor( room );
+            }
+        } );
 
         vv.getRenderContext().setLabelOffset( 5 );
 
@@ -96,18 +162,29 @@ public class MapperEngine implements ItemListener, ComponentListener {
         scaler = new ScalingGraphMousePlugin( new CrossoverScalingControl(), 0, 1 / 1.1f, 1.1f );
         pgm.add( scaler );
         vv.setGraphMouse( pgm );
+        repaintScheduler = new RepaintScheduler( vv, renderDetail );
+        vv.addMouseWheelListener( repaintScheduler );
         panel = new MapperPanel( this );
     }
 
+    public boolean hasView() {
+        return vv != null;
+    }
+
 
     public void setSize( Dimension dimension ) {
         mapperLayout.setSize( dimension );
-        vv.setPreferredSize( dimension );
+        if (vv != null) {
+            vv.setPreferredSize( dimension );
+        }
     }
 
     //areaname;roomUID;exitUsed;indoor boolean;shortDesc;longDesc;exits
     public void moveToRoom( String areaName, String roomUID, String exitUsed, boolean indoors, String shortDesc, String longDesc, Set<String> exits ) {
         if (this.area == null || ! this.area.getName().equalsIgnoreCase( areaName )) {
+            if (this.area != null && currentRoom != null && ! didTeleportIn( exitUsed )) {
+                WorldGraph.forBaseDir( baseDir ).recordTransition( this.area.getName(), currentRoom.getId(), exitUsed, areaName, roomUID );
+            }
             moveToArea( areaName );
         }
 
@@ -131,7 +208,7 @@ public class MapperEngine implements ItemListener, ComponentListener {
      */
     public boolean moveToRoom( String roomUID, String exitUsed, String longDesc, String shortDesc, boolean indoors, Set<String> exits ) {
 //		System.out.println(roomUID);
-        Room newRoom = getRoomFromGraph( roomUID );
+        Room newRoom = roomIndex.getRoom( roomUID );
         boolean newRoomAddedToGraph = false;
         if (newRoom == null) {
             newRoom = new Room( roomUID, this.area );
@@ -143,24 +220,58 @@ public class MapperEngine implements ItemListener, ComponentListener {
             newRoom.setAreaEntrance( true );
         }
 
+        synchronized (graphLock) {
+            addRoomAndExits( newRoom, exit, exitUsed, newRoomAddedToGraph );
+        }
+        if (currentRoom != null && mazemode) {
+            currentRoom.useExit(exitUsed);
+        }
+        if (currentRoom != null) {
+            mapperLayout.markDirty( currentRoom );
+        }
+        mapperLayout.markDirty( newRoom );
+
+        refreshRoomGraphicsAndSetAsCurrent( newRoom, longDesc, shortDesc, indoors, exits );
+        repaint();
+        moveMapToStayWithCurrentRoom();
+        return newRoomAddedToGraph;
+    }
+
+    private void addRoomAndExits( Room newRoom, Exit exit, String exitUsed, boolean newRoomAddedToGraph ) {
         if (currentRoom == null || didTeleportIn( exitUsed )) {
-            graph.addVertex( newRoom );// if room existed in this graph, then this just does nothing?
+            if (graph.addVertex( newRoom )) {// if room existed in this graph, then this just does nothing?
+                markAreaChanged();
+                pathFinder.invalidate();
+            }
         } else {
             if (GraphUtils.canAddExit( graph.getOutEdges( currentRoom ), exitUsed )) { // parallel exits can exist, but not with same name
                 currentRoom.addExit( exit.getExit() );
                 graph.addEdge( exit, new Pair<Room>( currentRoom, newRoom ), EdgeType.DIRECTED );
+                markAreaChanged();
+                pathFinder.invalidate();
+                if (! newRoomAddedToGraph) {
+                    // a new room indexes its exits when it gets placed
+                    mapperLayout.exitAdded( exit );
+                }
 
                 if(reversableDirsMode && exit.getOpposite() != null){
                     Exit reverseExit = new Exit( exit.getOpposite() );
                     if(GraphUtils.canAddExit( graph.getOutEdges( newRoom ), reverseExit.getExit() )){
                         newRoom.addExit( reverseExit.getExit() );
                         graph.addEdge( reverseExit, new Pair<Room>( newRoom, currentRoom ), EdgeType.DIRECTED );
+                        if (! newRoomAddedToGraph) {
+                            mapperLayout.exitAdded( reverseExit );
+                        }
                     }
                 }
             }
 
         }
 
+        if (newRoomAddedToGraph && graph.containsVertex( newRoom )) {
+            roomIndex.add( newRoom );
+        }
+
         if (newRoomAddedToGraph) {
 
             if (currentRoom != null) {
@@ -168,29 +279,100 @@ public class MapperEngine implements ItemListener, ComponentListener {
                 Point2D relativeLocation = DrawingUtils.getRelativePosition( oldroomLocation, exit, this.snapMode );
 //				relativeLocation = getValidLocation(relativeLocation);
                 relativeLocation = mapperLayout.getValidLocation( relativeLocation );
-                vv.getGraphLayout().setLocation( newRoom, relativeLocation );
+                setRoomLocation( newRoom, relativeLocation );
             } else {
                 //either first room in new area, or new room in old area, no connection anywhere, either way lets draw into middle
-                Point2D possibleLocation = new Point2D.Double( panel.getWidth() / 2, panel.getHeight() / 2 );
+                Point2D possibleLocation;
+                if (panel != null) {
+                    possibleLocation = new Point2D.Double( panel.getWidth() / 2, panel.getHeight() / 2 );
+                } else {
+                    possibleLocation = new Point2D.Double( mapperLayout.getSize().width / 2, mapperLayout.getSize().height / 2 );
+                }
 //				possibleLocation = getValidLocation(possibleLocation);
                 possibleLocation = mapperLayout.getValidLocation( possibleLocation );
-                vv.getGraphLayout().setLocation( newRoom, possibleLocation );
+                setRoomLocation( newRoom, possibleLocation );
             }
 
         }
-        if (currentRoom != null && mazemode) {
-            currentRoom.useExit(exitUsed);
-        }
+    }
 
-        refreshRoomGraphicsAndSetAsCurrent( newRoom, longDesc, shortDesc, indoors, exits );
-        repaint();
-        moveMapToStayWithCurrentRoom();
-        return newRoomAddedToGraph;
+    private void setRoomLocation( Room room, Point2D location ) {
+        if (vv != null) {
+            vv.getGraphLayout().setLocation( room, location );
+        } else {
+            mapperLayout.setLocation( room, location );
+        }
     }
 
 
+    /**
+     * Asks for a repaint of the map view, made at most once a frame, see {@link RepaintScheduler}.
+     */
     public void repaint() {
-        vv.repaint();
+        if (repaintScheduler != null) {
+            repaintScheduler.repaint();
+        }
+    }
+
+    public void setIngest( MapperIngest ingest ) {
+        this.ingest = ingest;
+    }
+
+    public MapperIngest getIngest() {
+        return ingest;
+    }
+
+    public PathFinder getPathFinder() {
+        return pathFinder;
+    }
+
+    public RoomIconTransformer getRoomIconTransformer() {
+        return roomIconTransformer;
+    }
+
+    public RenderDetail getRenderDetail() {
+        return renderDetail;
+    }
+
+    public CullingRenderer<Room, Exit> getCullingRenderer() {
+        return cullingRenderer;
+    }
+
+    public TiledRenderer getTiledRenderer() {
+        return tiledRenderer;
+    }
+
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
+
+    /**
+     * Runs a task that mutates the graph on the mapper thread, or right away if there is no mapper thread.
+     *
+     * @param task
+     */
+    public void execute( Runnable task ) {
+        if (ingest != null) {
+            ingest.execute( task );
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Hands a view update to the EDT, the mapper thread itself never touches swing components.
+     *
+     * @param update
+     */
+    protected void updateView( Runnable update ) {
+        if (vv == null) {
+            return;
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            update.run();
+        } else {
+            SwingUtilities.invokeLater( update );
+        }
     }
 
 
@@ -213,6 +395,7 @@ public class MapperEngine implements ItemListener, ComponentListener {
         room.setShortDesc( shortDesc );
         room.setIndoors( indoors );
         room.addExits( exits );
+        mapperLayout.markDirty( room );
     }
 
     protected void refreshRoomGraphicsAndSetAsCurrent( Room newRoom, String longDesc, String shortDesc, boolean indoors, Set<String> exits ) {
@@ -228,6 +411,18 @@ public class MapperEngine implements ItemListener, ComponentListener {
         }
         newRoom.setCurrent( true );
         currentRoom = newRoom;
+        showAsCurrent( newRoom );
+    }
+
+    /**
+     * Tells the renderer which room to paint with the current border over the map tiles.
+     *
+     * @param room
+     */
+    protected void showAsCurrent( Room room ) {
+        if (tiledRenderer != null) {
+            tiledRenderer.setCurrentRoom( room );
+        }
     }
 
     /**
@@ -244,11 +439,24 @@ public class MapperEngine implements ItemListener, ComponentListener {
             this.area = null;
             currentRoom = null;
 
-            pickedState.clear();
-            this.graph = new SparseMultigraph<Room, Exit>();
-            mapperLayout.setGraph( graph );
-            Room nullRoom = null;
-            this.panel.setTextForDescs( "", "", "", nullRoom );
+            synchronized (graphLock) {
+                this.graph = new SparseMultigraph<Room, Exit>();
+                mapperLayout.setGraph( graph );
+            }
+            roomIndex.clear();
+            updateView( new Runnable() {
+                @Override
+                public void run() {
+                    beginSelection();
+                    try {
+                        pickedState.clear();
+                    } finally {
+                        endSelection();
+                    }
+                    Room nullRoom = null;
+                    panel.setTextForDescs( "", "", "", nullRoom );
+                }
+            } );
         } else {
             saveCurrentArea();
             AreaSaveObject areaSaveObject = null;
@@ -263,16 +471,21 @@ public class MapperEngine implements ItemListener, ComponentListener {
             if (areaSaveObject == null) {//area doesn't exist so we create new saveobject which has empty graphs and maps
                 areaSaveObject = new AreaSaveObject();
             }
-            this.graph = areaSaveObject.getGraph();
-            mapperLayout.setGraph( graph );
-//			mousePlugin.setGraph(graph);
-            mapperLayout.displayLoadedData( areaSaveObject );
+            synchronized (graphLock) {
+                this.graph = areaSaveObject.getGraph();
+                mapperLayout.setGraph( graph );
+//			    mousePlugin.setGraph(graph);
+                mapperLayout.displayLoadedData( areaSaveObject );
+            }
+            roomIndex.rebuild( graph.getVertices() );
             if (graph.getVertexCount() > 0) {
                 this.area = graph.getVertices().iterator().next().getArea();
             } else {
                 this.area = new Area( areaName );
             }
             this.currentRoom = null;
+            markAreaSaved();
+            AreaCache.forBaseDir( baseDir ).prefetch( WorldGraph.forBaseDir( baseDir ).getNeighbourAreas( areaName ) );
 
 
             /**
@@ -300,80 +513,208 @@ public class MapperEngine implements ItemListener, ComponentListener {
 
 
 
+    /**
+     * Snapshots the current area and leaves writing it to the background saver, see {@link AreaSaver}.
+     * Nothing is done if the area generation shows no changes since it was loaded or last saved. Routes
+     * between areas don't wait for this, see {@link AreaDataPersister#updateStaleRoutes(String)}.
+     */
     protected void saveCurrentArea() {
-        try {
-            if (this.area != null) {
-                AreaDataPersister.save( baseDir, graph, mapperLayout );
-            }
+        if (this.area == null || graph.getVertexCount() == 0) {
+            return;
+        }
+        AreaSaver saver = AreaSaver.forBaseDir( baseDir );
+        long generation = area.getGeneration();
+        if (area == savedArea && generation == savedGeneration) {
+            saver.skippedUnchanged();
+            return;
+        }
+        AreaSnapshot snapshot;
+        synchronized (graphLock) {
+            snapshot = AreaSnapshot.of( graph, mapperLayout );
+        }
+        saver.save( snapshot );
+        savedArea = area;
+        savedGeneration = generation;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Remembers the current area as saved, called right after loading it.
+     */
+    protected void markAreaSaved() {
+        savedArea = area;
+        savedGeneration = area == null ? 0 : area.getGeneration();
+    }
+
+    private void markAreaChanged() {
+        if (area != null) {
+            area.markChanged();
         }
     }
 
+    /**
+     * Blocks until the saves queued so far are written, call after the ingest has been drained.
+     */
+    public void flushSaves() {
+        AreaSaver.forBaseDir( baseDir ).flush();
+    }
+
 
     public void save() {
-        saveCurrentArea();
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                saveCurrentArea();
+            }
+        } );
     }
 
     public void clearCurrentArea() {
-	String areaName = area.getName();
-	AreaSaveObject areaSaveObject = new AreaSaveObject();
-	this.graph = areaSaveObject.getGraph();
-	mapperLayout.setGraph( graph );
-	mapperLayout.displayLoadedData( areaSaveObject );
-	this.area = new Area( areaName );
-	this.currentRoom = null;
-	repaint();
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                String areaName = area.getName();
+                AreaSaveObject areaSaveObject = new AreaSaveObject();
+                synchronized (graphLock) {
+                    graph = areaSaveObject.getGraph();
+                    mapperLayout.setGraph( graph );
+                    mapperLayout.displayLoadedData( areaSaveObject );
+                }
+                roomIndex.clear();
+                area = new Area( areaName );
+                currentRoom = null;
+                repaint();
+            }
+        } );
     }
 
-    private Room getRoomFromGraph( String uid ) {
-        for (Room room : this.graph.getVertices()) {
-            if (room.getId().equals( uid )) {
-                return room;
+    /**
+     * Removes rooms from the graph on the mapper thread, used for deletions from the map view.
+     *
+     * @param rooms
+     */
+    public void removeRooms( final Collection<Room> rooms ) {
+        final List<Room> removed = new ArrayList<Room>( rooms );
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                synchronized (graphLock) {
+                    for (Room room : removed) {
+                        mapperLayout.markDirty( room );
+                        graph.removeVertex( room );
+                        roomIndex.remove( room );
+                    }
+                    markAreaChanged();
+                    pathFinder.invalidate();
+                }
+                repaint();
             }
-        }
+        } );
+    }
 
-        return null;
+    /**
+     * Removes an exit from the graph on the mapper thread.
+     *
+     * @param exit
+     */
+    public void removeExit( final Exit exit ) {
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                synchronized (graphLock) {
+                    mapperLayout.markDirty( exit );
+                    graph.removeEdge( exit );
+                    markAreaChanged();
+                    pathFinder.invalidate();
+                }
+                repaint();
+            }
+        } );
     }
 
+    /**
+     * Renames an exit, edited on the map view.
+     *
+     * @param exit
+     * @param name
+     */
+    public void renameExit( Exit exit, String name ) {
+        synchronized (graphLock) {
+            exit.setExit( name );
+            mapperLayout.markDirty( exit );
+            markAreaChanged();
+        }
+        repaint();
+    }
 
     @Override
     public void itemStateChanged( ItemEvent e ) {
         Object subject = e.getItem();
         if (subject instanceof Room) {
-            Room tempRoom = (Room) subject;
-            if(e.getStateChange() == ItemEvent.SELECTED){
-                pickedState.pick(tempRoom, true);
-                tempRoom.setPicked(true);
-
-            }else if(e.getStateChange() == ItemEvent.DESELECTED){
-                pickedState.pick(tempRoom, false);
-                tempRoom.setPicked(false);
-            }
-            repaint();
+            ( (Room) subject ).setPicked( e.getStateChange() == ItemEvent.SELECTED );
         }
-        if(pickedState.getPicked().size() == 1){
-            singleRoomPicked(pickedState.getPicked().iterator().next());
-        }else{
-            this.panel.setTextForDescs( "", "", "", null );
+        if (selectionBatch > 0) {
+            selectionChanged = true;
+            return;
         }
+        selectionChanged();
+    }
 
+    /**
+     * Starts a batch of selection changes. Rooms are picked and unpicked as usual inside it, but the
+     * view is repainted and the desc panel updated only once, when the outermost batch ends.
+     * Call from the event dispatch thread and always pair with {@link #endSelection()}.
+     */
+    public void beginSelection() {
+        selectionBatch++;
     }
 
-    public void changeRoomColor( Color color ) {
-        for(Room room: pickedState.getPicked()){
-            room.setColor(color);
+    public void endSelection() {
+        if (selectionBatch > 0 && --selectionBatch == 0 && selectionChanged) {
+            selectionChanged = false;
+            selectionChanged();
         }
-        repaint();
-
     }
 
+    private void selectionChanged() {
+        repaint();
+        if (pickedState.getPicked().size() == 1) {
+            singleRoomPicked( pickedState.getPicked().iterator().next() );
+        } else {
+            this.panel.setTextForDescs( "", "", "", null );
+        }
+    }
 
-    protected void singleRoomPicked( Room room ) {
-        this.panel.setTextForDescs( room.getShortDesc(), room.getLongDesc(), makeExitsStringFromPickedRoom(room), room );
+    /**
+     * Colours all picked rooms at once, under the graph lock so a save never sees half of them coloured.
+     *
+     * @param color
+     */
+    public void changeRoomColor( Color color ) {
+        if (pickedState == null) {
+            return;
+        }
+        List<Room> picked = new ArrayList<Room>( pickedState.getPicked() );
+        synchronized (graphLock) {
+            for (Room room : picked) {
+                room.setColor( color );
+                mapperLayout.markDirty( room );
+            }
+        }
+        repaint();
+    }
 
 
+    protected void singleRoomPicked( final Room room ) {
+        final String exits;
+        synchronized (graphLock) {
+            exits = makeExitsStringFromPickedRoom( room );
+        }
+        updateView( new Runnable() {
+            @Override
+            public void run() {
+                panel.setTextForDescs( room.getShortDesc(), room.getLongDesc(), exits, room );
+            }
+        } );
     }
 
     protected String makeExitsStringFromPickedRoom(Room room) {
@@ -385,7 +726,7 @@ public class MapperEngine implements ItemListener, ComponentListener {
 
                 while (exitIterator.hasNext()) {
                     Exit exit = exitIterator.next();
-                    room.getExits().add(exit.getExit());
+                    room.addExit(exit.getExit());
                 }
             }
 
@@ -410,7 +751,9 @@ public class MapperEngine implements ItemListener, ComponentListener {
 
     public void setMapperSize( Dimension size ) {
         this.mapperLayout.setSize( size );
-        this.vv.setSize( size );
+        if (this.vv != null) {
+            this.vv.setSize( size );
+        }
         repaint();
     }
 
@@ -424,9 +767,20 @@ public class MapperEngine implements ItemListener, ComponentListener {
      * if current room is over away from center by 50% of distance to windowedge
      */
     protected void moveMapToStayWithCurrentRoom() {
+        final Room room = currentRoom;
+        if (room == null) {
+            return;
+        }
+        updateView( new Runnable() {
+            @Override
+            public void run() {
+                moveMapToStayWithRoom( room );
+            }
+        } );
+    }
 
-
-        Point2D currentRoomPoint = this.mapperLayout.transform( currentRoom );
+    private void moveMapToStayWithRoom( Room room ) {
+        Point2D currentRoomPoint = this.mapperLayout.transform( room );
 
         Point2D mapViewCenterPoint = this.panel.getMapperCentralPoint();
         Point2D viewPoint = vv.getRenderContext().getMultiLayerTransformer().transform( currentRoomPoint );
@@ -467,7 +821,9 @@ public class MapperEngine implements ItemListener, ComponentListener {
 
 
     public void toggleDescs() {
-        this.panel.toggleDescs();
+        if (this.panel != null) {
+            this.panel.toggleDescs();
+        }
 
     }
 
@@ -525,23 +881,44 @@ public class MapperEngine implements ItemListener, ComponentListener {
 
     public void setRoomSnapping(boolean roomsWillSnapIntoPlaces){
         this.snapMode = roomsWillSnapIntoPlaces;
-        mapperPickingGraphMousePlugin.setSnapmode(roomsWillSnapIntoPlaces);
+        if (mapperPickingGraphMousePlugin != null) {
+            mapperPickingGraphMousePlugin.setSnapmode(roomsWillSnapIntoPlaces);
+        }
         this.mapperLayout.setSnapMode(roomsWillSnapIntoPlaces);
     }
 
     public void zoomIn(){
+        if (this.vv == null) {
+            return;
+        }
         this.scaler.getScaler().scale(this.vv, 1.1f, this.vv.getCenter());
     }
 
     public void zoomOut(){
+        if (this.vv == null) {
+            return;
+        }
         this.scaler.getScaler().scale(this.vv, 1/1.1f, this.vv.getCenter());
     }
 
+    /**
+     * @param targetroom
+     * @param shortDirs
+     * @return directions from current room to targetroom, or null if there is no known way there
+     */
     public String checkDirsFromCurrentRoomTo(Room targetroom, boolean shortDirs){
-        DijkstraShortestPath<Room, Exit> algorithm = new DijkstraShortestPath<Room, Exit>( this.getGraph() );
         StringBuilder returnvalue= new StringBuilder();
-        String delim = this.corpsePanel.getDelim();
-        List<Exit> path = algorithm.getPath( currentRoom, targetroom );
+        String delim = getDelim();
+        List<Exit> path;
+        synchronized (graphLock) {
+            path = pathFinder.getPath( graph, currentRoom, targetroom );
+        }
+        if(path == null){
+            return null;
+        }
+        if(path.isEmpty()){
+            return "";
+        }
         if(shortDirs){
             //plan is to transform "north, north, north, south, east, tunnel" into
             // 3 n;s;e;tunnel
@@ -586,56 +963,123 @@ public class MapperEngine implements ItemListener, ComponentListener {
         this.corpsePanel = corpsePanel;
     }
 
+    private String getDelim(){
+        return this.corpsePanel != null ? this.corpsePanel.getDelim() : DEFAULT_DELIM;
+    }
+
     public void sendToMud(String command){
-        this.plugin.doCommand( command );
+        if (this.plugin != null) {
+            this.plugin.doCommand( command );
+        }
     }
 
     public void sendToParty(String message){
-        this.plugin.doCommand( "party say "+message.replace( this.corpsePanel.getDelim(), "," ) );
+        sendToMud( "party say "+message.replace( getDelim(), "," ) );
     }
 
     public void removeLabelFromCurrent(){
-        this.currentRoom.setLabel(null);
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                roomIndex.setLabel( currentRoom, null );
+            }
+        } );
     }
-    public void setLabelToCurrentRoom(String label){
-        this.currentRoom.setLabel(label);
+    public void setLabelToCurrentRoom(final String label){
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                roomIndex.setLabel( currentRoom, label );
+            }
+        } );
     }
 
     public boolean roomLabelExists(String label){
-        for( Room room: this.graph.getVertices()){
-            if(room.getLabel() != null && room.getLabel().equalsIgnoreCase(label)){
-                return true;
+        return roomIndex.getRoomWithLabel( label ) != null;
+    }
+
+    /**
+     * @param label
+     * @return true if label is in current area, or in another area that the world graph knows
+     */
+    public boolean labelReachable(String label){
+        return roomLabelExists( label ) || ( area != null && WorldGraph.forBaseDir( baseDir ).labelExists( area.getName(), label ) );
+    }
+
+    /**
+     * Routes through other areas using the world graph, only the current area is walked here.
+     *
+     * @param label
+     * @return directions to labeled room in another area, or null if no route is known
+     */
+    private String checkDirsToOtherArea(String label){
+        if (area == null) {
+            return null;
+        }
+        AreaDataPersister.updateStaleRoutes( baseDir );
+        WorldGraph world = WorldGraph.forBaseDir( baseDir );
+        Map<String, List<String>> startPaths = new HashMap<String, List<String>>();
+        synchronized (graphLock) {
+            for (String roomId : world.getExitRooms( area.getName() )) {
+                List<Exit> path = pathFinder.getPath( graph, currentRoom, roomIndex.getRoom( roomId ) );
+                if (path != null) {
+                    List<String> exits = new ArrayList<String>();
+                    for (Exit exit : path) {
+                        exits.add( exit.getExit() );
+                    }
+                    startPaths.put( roomId, exits );
+                }
             }
         }
-        return false;
+        List<String> route = world.findRoute( area.getName(), startPaths, label );
+        if (route == null) {
+            return null;
+        }
+        StringBuilder returnvalue = new StringBuilder();
+        for (String exit : route) {
+            returnvalue.append( exit ).append( getDelim() );
+        }
+        return returnvalue.toString();
     }
 
-    public void runtoLabel(String label){
-        Room targetroom = null;
-        for( Room room: this.graph.getVertices()){
-            if(room.getLabel() != null && room.getLabel().equalsIgnoreCase(label)){
-                targetroom = room;
+    public void runtoLabel(final String label){
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                Room targetroom = roomIndex.getRoomWithLabel( label );
+                String dirs = targetroom != null ? checkDirsFromCurrentRoomTo( targetroom, false ) : checkDirsToOtherArea( label );
+                if (dirs == null) {
+                    if (plugin != null) {
+                        plugin.printConsoleError( String.format( "no known path to [%s]", label ) );
+                    }
+                } else {
+                    sendToMud( dirs );
+                }
             }
-        }
-        String dirs = checkDirsFromCurrentRoomTo(targetroom, false);
-        sendToMud(dirs);
+        } );
     }
     public List<String> getLabels(){
         List<String> labels = new LinkedList<>();
-        for( Room room: this.graph.getVertices()){
-            if(room.getLabel() != null){
-                labels.add(String.format("%-10s %s", room.getLabel(), room.getShortDesc()));
-            }
+        for( Room room: roomIndex.getLabeledRooms()){
+            labels.add(String.format("%-10s %s", room.getLabel(), room.getShortDesc()));
         }
         return labels;
     }
 
-    public void setMazeMode(boolean enabled){
-        this.mazemode = enabled;
-        for(Room room: this.graph.getVertices()){
-                room.resetExitUsage();
-        }
-            repaint();
+    public void setMazeMode(final boolean enabled){
+        execute( new Runnable() {
+            @Override
+            public void run() {
+                mazemode = enabled;
+                synchronized (graphLock) {
+                    for (Room room : graph.getVertices()) {
+                        room.resetExitUsage();
+                    }
+                    mapperLayout.markAllDirty();
+                }
+                repaint();
+            }
+        } );
     }
 
     public void setReversableDirsMode(boolean enabled){
@@ -0,0 +1,232 @@
+package com.glaurung.batMap.controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import com.glaurung.batMap.vo.MapperEvent;
+
+/**
+ * Single writer for the mapper graph. Parsed protocol events and other graph mutations are queued here
+ * and run one by one on the mapper thread, so the thread delivering protocol events never waits for
+ * graph work, saving or loading. Only view updates are handed back to the EDT by the engine.
+ * <p>
+ * The queue is bounded, if the mapper falls behind the producer blocks until there is room again.
+ *
+ * @author lauri
+ */
+public class MapperIngest implements Runnable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long SHUTDOWN_WAIT_MILLIS = 10000;
+
+    private final BlockingQueue<Job> queue;
+    private final MapperEngine engine;
+    private final SearchEngine searchEngine;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile long lastLatencyNanos = 0;
+    private volatile int maxQueueDepth = 0;
+
+    public MapperIngest( MapperEngine engine, SearchEngine searchEngine ) {
+        this( engine, searchEngine, DEFAULT_CAPACITY );
+    }
+
+    public MapperIngest( MapperEngine engine, SearchEngine searchEngine, int capacity ) {
+        this.engine = engine;
+        this.searchEngine = searchEngine;
+        this.queue = new ArrayBlockingQueue<Job>( capacity );
+        this.worker = new Thread( this, "batMap-mapper" );
+        this.worker.setDaemon( true );
+        this.worker.start();
+    }
+
+    /**
+     * Queues a parsed protocol event, blocks while the queue is full.
+     *
+     * @param event
+     */
+    public void submit( final MapperEvent event ) {
+        enqueue( new Job( null, event ) );
+    }
+
+    /**
+     * Queues a task that needs to touch the graph, runs it right away if called from the mapper thread.
+     *
+     * @param task
+     */
+    public void execute( Runnable task ) {
+        if (isMapperThread()) {
+            task.run();
+            return;
+        }
+        enqueue( new Job( task, null ) );
+    }
+
+    /**
+     * Blocks until everything queued before this call has been handled.
+     */
+    public void drain() throws InterruptedException {
+        if (isMapperThread()) {
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch( 1 );
+        enqueue( new Job( new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, null ) );
+        if (running) {
+            done.await();
+        }
+    }
+
+    public boolean isMapperThread() {
+        return Thread.currentThread() == worker;
+    }
+
+    private void enqueue( Job job ) {
+        if (! running) {
+            return;
+        }
+        try {
+            queue.put( job );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running || ! queue.isEmpty()) {
+            Job job;
+            try {
+                job = queue.poll( 100, TimeUnit.MILLISECONDS );
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (job == null) {
+                continue;
+            }
+            try {
+                if (job.event != null) {
+                    handle( job.event );
+                } else {
+                    job.task.run();
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            if (job.event != null) {
+                recordLatency( System.nanoTime() - job.enqueued );
+            }
+        }
+    }
+
+    private void handle( MapperEvent event ) {
+        final String areaName;
+        if (event.getType() == MapperEvent.Type.REALM_MAP) {
+            engine.moveToArea( null );
+            areaName = null;
+        } else {
+            engine.moveToRoom( event.getAreaName(), event.getRoomUID(), event.getExitUsed(), event.isIndoors(),
+                    event.getShortDesc(), event.getLongDesc(), event.getExits() );
+            areaName = event.getAreaName();
+        }
+        if (searchEngine != null) {
+            SwingUtilities.invokeLater( new Runnable() {
+                @Override
+                public void run() {
+                    searchEngine.setMapperArea( areaName );
+                }
+            } );
+        }
+    }
+
+    private void recordLatency( long nanos ) {
+        processed.incrementAndGet();
+        totalLatencyNanos.addAndGet( nanos );
+        lastLatencyNanos = nanos;
+        long max = maxLatencyNanos.get();
+        while (nanos > max && ! maxLatencyNanos.compareAndSet( max, nanos )) {
+            max = maxLatencyNanos.get();
+        }
+    }
+
+    /**
+     * Stops taking new work, lets the mapper thread finish what is already queued and waits for it.
+     */
+    public void shutdown() {
+        running = false;
+        if (isMapperThread()) {
+            return;
+        }
+        try {
+            worker.join( SHUTDOWN_WAIT_MILLIS );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public double getAverageLatencyMillis() {
+        long count = processed.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalLatencyNanos.get() / (double) count / 1000000.0;
+    }
+
+    public double getLastLatencyMillis() {
+        return lastLatencyNanos / 1000000.0;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "ingest: queue %d (max %d), %d events, latency avg %.2f ms, last %.2f ms, max %.2f ms",
+                getQueueDepth(), getMaxQueueDepth(), getProcessedCount(),
+                getAverageLatencyMillis(), getLastLatencyMillis(), getMaxLatencyMillis() );
+    }
+
+
+    private static class Job {
+        final Runnable task;
+        final MapperEvent event;
+        final long enqueued = System.nanoTime();
+
+        Job( Runnable task, MapperEvent event ) {
+            this.task = task;
+            this.event = event;
+        }
+    }
+
+}
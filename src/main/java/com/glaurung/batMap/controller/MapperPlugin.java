@@ -2,16 +2,22 @@ package com.glaurung.batMap.controller;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import com.glaurung.batMap.gui.corpses.CorpsePanel;
 import com.glaurung.batMap.gui.manual.ManualPanel;
 import com.glaurung.batMap.gui.search.SearchPanel;
+import com.glaurung.batMap.io.AreaCache;
 import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.io.AreaJournal;
+import com.glaurung.batMap.io.AreaSaver;
 import com.glaurung.batMap.io.GuiDataPersister;
+import com.glaurung.batMap.io.ProtocolLog;
+import com.glaurung.batMap.io.SettingsStore;
 import com.glaurung.batMap.vo.GuiData;
+import com.glaurung.batMap.vo.MapperEvent;
 import com.mythicscape.batclient.interfaces.BatClientPlugin;
 import com.mythicscape.batclient.interfaces.BatClientPluginTrigger;
 import com.mythicscape.batclient.interfaces.BatClientPluginUtil;
@@ -30,26 +36,19 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
     protected static final String COMMAND_LIST_LABELS = "list";
     protected static final String COMMAND_APPEND_TO_NOTES = "append";
     protected static final String COMMAND_FIND_DESC = "find";
+    protected static final String COMMAND_STATS = "stats";
+    protected static final String COMMAND_RECORD = "record";
+    protected static final String COMMAND_REPLAY = "replay";
+    protected static final String REPLAY_FAST = "fast";
     
     private MapperEngine engine;
+    private MapperIngest ingest;
     private SearchEngine searchEngine;
     private SearchPanel searchPanel;
-    private final String CHANNEL_PREFIX = "BAT_MAPPER";
-    //batMap;areaname;roomUID;exitUsed;indoor boolean;shortDesc;longDesc;exits
-    private final int PREFIX = 0;
-    private final int AREA_NAME = 1;
-    private final int ROOM_ID = 2;
-    private final int EXIT_USED = 3;
-    private final int IS_INDOORS = 4;
-    private final int SHORT_DESC = 5;
-    private final int LONG_DESC = 6;
-    private final int EXITS = 7;
-
-    private final int MESSAGE_LENGTH = 9;
-    private final int EXIT_AREA_LENGTH = 2;
-
-    private final String EXIT_AREA_MESSAGE = "REALM_MAP";
+    private final MapperProtocolParser parser = new MapperProtocolParser();
     private String BASEDIR = null;
+    private volatile ProtocolLog.Recorder recorder;
+    private volatile ProtocolReplay replay;
 
 
     public void loadPlugin() {
@@ -80,6 +79,8 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
         AreaDataPersister.migrateFilesToNewLocation( BASEDIR );
         engine.setBaseDir( BASEDIR );
         searchEngine.setBaseDir( BASEDIR );
+        ingest = new MapperIngest( engine, searchEngine );
+        engine.setIngest( ingest );
         clientWin.addComponentListener( engine );
 
     }
@@ -111,42 +112,109 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
          */
 
         //cMapper;areaname;roomUID;exitUsed;indoor boolean;shortDesc;longDesc;exits
-        String input = event.getActionCommand();
-        String[] values = input.split( ";;", - 1 );
-        if (values[PREFIX].equals( CHANNEL_PREFIX ) && values.length == MESSAGE_LENGTH) {
-//			System.out.println("\n\n\nvalid input: " +input);
-            String areaName = values[AREA_NAME];
-            String roomUID = values[ROOM_ID];
-            String exitUsed = values[EXIT_USED];
-            boolean indoors = convertToBoolean( values[IS_INDOORS] );
-            String shortDesc = values[SHORT_DESC];
-            String longDesc = values[LONG_DESC].replaceAll( "\n", " " );
-            HashSet<String> exits = new HashSet<String>( Arrays.asList( values[EXITS].split( "," ) ) );
-            this.engine.moveToRoom( areaName, roomUID, exitUsed, indoors, shortDesc, longDesc, exits );
-            this.searchEngine.setMapperArea( areaName );
-        } else if (values[PREFIX].equals( CHANNEL_PREFIX ) && values.length != EXIT_AREA_LENGTH) {
-//			System.out.println("\n\n\nBROKEN HIDEOUS INPUT: "+input);
-        } else if (values[PREFIX].equals( CHANNEL_PREFIX ) && values.length == EXIT_AREA_LENGTH) {
-//			System.out.println("\n\n\nexiting area: "+input);
-            if (values[AREA_NAME].equals( EXIT_AREA_MESSAGE )) {
-                this.engine.moveToArea( null );
-                this.searchEngine.setMapperArea( null );
+        ProtocolLog.Recorder recorder = this.recorder;
+        if (recorder != null) {
+            try {
+                recorder.record( event.getActionCommand() );
+            } catch (IOException e) {
+                this.recorder = null;
+                printConsoleError( "recording stopped: " + e.getMessage() );
             }
         }
-
-    }
-
-    private boolean convertToBoolean( String oneOrZero ) {
-        if (new Integer( oneOrZero ) == 0)
-            return false;
-        return true;
+        MapperEvent mapperEvent = parser.parse( event.getActionCommand() );
+        if (mapperEvent != null) {
+            this.ingest.submit( mapperEvent );
+        }
 
     }
 
     @Override
     public void clientExit() {
+        if (this.replay != null) {
+            this.replay.stop();
+        }
+        stopRecording();
         this.engine.save();
+        this.ingest.shutdown();
+        this.engine.flushSaves();
+        SettingsStore.forBaseDir( BASEDIR ).flush();
+    }
 
+    private void toggleRecording() {
+        if (this.recorder != null) {
+            ProtocolLog.Recorder stopped = this.recorder;
+            stopRecording();
+            printConsoleMessage( String.format( "recorded %d messages to %s", stopped.getCount(), stopped.getFile() ) );
+            return;
+        }
+        try {
+            this.recorder = ProtocolLog.startRecording( BASEDIR );
+            printConsoleMessage( String.format( "recording protocol to %s", this.recorder.getFile() ) );
+        } catch (IOException e) {
+            printConsoleError( "could not start recording: " + e.getMessage() );
+        }
+    }
+
+    private void stopRecording() {
+        ProtocolLog.Recorder recorder = this.recorder;
+        this.recorder = null;
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Plays a recording back on its own thread, then waits for the mapper to handle everything and prints
+     * how long it took. The replay parses with a parser of its own, the live one belongs to the thread
+     * calling actionPerformed.
+     */
+    private void startReplay( String name, boolean fast ) {
+        if (this.replay != null) {
+            printConsoleError( "replay of " + this.replay.getFile().getName() + " still running" );
+            return;
+        }
+        File file = ProtocolLog.findRecording( BASEDIR, name );
+        if (file == null) {
+            printConsoleError( String.format( "no recording [%s] in %s", name, ProtocolLog.getRecordingDir( BASEDIR ) ) );
+            return;
+        }
+        final MapperProtocolParser replayParser = new MapperProtocolParser();
+        final ProtocolReplay replay = new ProtocolReplay( file, new ActionListener() {
+            @Override
+            public void actionPerformed( ActionEvent event ) {
+                MapperEvent mapperEvent = replayParser.parse( event.getActionCommand() );
+                if (mapperEvent != null) {
+                    ingest.submit( mapperEvent );
+                }
+            }
+        }, fast ? 0 : 1 );
+        this.replay = replay;
+        printConsoleMessage( String.format( "replaying %s%s", file.getName(), fast ? " as fast as possible" : "" ) );
+        Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                replay.run();
+                try {
+                    ingest.drain();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                long millis = Math.max( 1, ( System.nanoTime() - start ) / 1000000 );
+                if (replay.getError() != null) {
+                    printConsoleError( "replay stopped: " + replay.getError().getMessage() );
+                }
+                printConsoleMessage( String.format( "replayed %d messages in %d ms, %.0f messages/s", replay.getCount(),
+                        millis, replay.getCount() * 1000.0 / millis ) );
+                MapperPlugin.this.replay = null;
+            }
+        }, "batMap-replay" );
+        thread.setDaemon( true );
+        thread.start();
     }
 
     public void saveRipAction( String ripString ) {
@@ -176,6 +244,9 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
             printConsoleMessage(String.format("\t%s        - to list labels and rooms",COMMAND_LIST_LABELS));
             printConsoleMessage(String.format("\t%s        - to append a line to roomnotes",COMMAND_APPEND_TO_NOTES));
             printConsoleMessage(String.format("\t%s <desc> - to find rooms by long desc",COMMAND_FIND_DESC));
+            printConsoleMessage(String.format("\t%s        - to show mapper performance counters",COMMAND_STATS));
+            printConsoleMessage(String.format("\t%s       - to start or stop recording the mapper protocol",COMMAND_RECORD));
+            printConsoleMessage(String.format("\t%s <file> [%s] - to replay a recording, at recorded pace or as fast as possible",COMMAND_REPLAY, REPLAY_FAST));
         }
         if(input instanceof String){
             String[] params = ((String)input).split(" ");
@@ -187,6 +258,19 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
                     for(String entry : this.engine.getLabels()){
                         printConsoleMessage(entry);
                     }
+                }else if(command.equalsIgnoreCase(COMMAND_STATS)){
+                    printConsoleMessage(this.ingest.toString());
+                    printConsoleMessage(this.engine.getPathFinder().toString());
+                    printConsoleMessage(this.engine.getRoomIconTransformer().toString());
+                    printConsoleMessage(this.engine.getCullingRenderer().toString());
+                    printConsoleMessage(this.engine.getTiledRenderer().toString());
+                    printConsoleMessage(this.engine.getRepaintScheduler().toString());
+                    printConsoleMessage(AreaJournal.forBaseDir( BASEDIR ).toString());
+                    printConsoleMessage(AreaSaver.forBaseDir( BASEDIR ).toString());
+                    printConsoleMessage(AreaCache.forBaseDir( BASEDIR ).toString());
+                    printConsoleMessage(SettingsStore.forBaseDir( BASEDIR ).toString());
+                }else if(command.equalsIgnoreCase(COMMAND_RECORD)){
+                    toggleRecording();
                 }else{
                     printConsoleError(String.format("unknown command: [%s]", command));
                 }
@@ -202,7 +286,7 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
                     }
                 }else if(command.equalsIgnoreCase(COMMAND_RUN_TO_LABEL)){
                     printConsoleMessage(String.format("running to room [%s]", label));
-                    if(this.engine.roomLabelExists(label)){
+                    if(this.engine.labelReachable(label)){
                         this.engine.runtoLabel(label);
                     }else{
                         printConsoleError(String.format("label [%s] not found", label));
@@ -210,6 +294,8 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
                 }else if(command.equalsIgnoreCase( COMMAND_APPEND_TO_NOTES )){
                     printConsoleMessage(String.format("Appending to notes [%s]", label));
                     this.engine.getPanel().appentToNotes( label );
+                }else if(command.equalsIgnoreCase( COMMAND_REPLAY )){
+                    startReplay( label, false );
                 }else{
                     printConsoleError(String.format("unknown command: [%s]", command));
                 }
@@ -226,6 +312,8 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
                     for(String room:  rooms) {
                         printConsoleMessage(room);
                     }
+                }else if(command.equalsIgnoreCase( COMMAND_REPLAY ) && params.length == 3 && params[2].equalsIgnoreCase( REPLAY_FAST )){
+                    startReplay( params[1], true );
                 }
                 else{
                     printConsoleError(String.format("unknown command: [%s] or too many params, slow down!", command));
@@ -238,7 +326,7 @@ public class MapperPlugin extends BatClientPlugin implements BatClientPluginTrig
         }
     }
 
-    private void printConsoleError(String msg){
+    void printConsoleError(String msg){
         this.getClientGUI().printText("general","[Mapper error] "+msg+"\n", "F7856D");
     }
     private void printConsoleMessage(String msg){
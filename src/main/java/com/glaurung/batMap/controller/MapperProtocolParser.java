@@ -0,0 +1,238 @@
+package com.glaurung.batMap.controller;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.glaurung.batMap.vo.MapperEvent;
+
+/**
+ * Parser for BAT_MAPPER protocol messages:
+ * <pre>
+ * BAT_MAPPER;;areaname;;roomUID;;exitUsed;;indoor 0/1;;shortDesc;;longDesc;;exits;;
+ * BAT_MAPPER;;REALM_MAP
+ * </pre>
+ * The message is scanned once. Area names, exit names and whole exit lists repeat constantly while walking,
+ * so those are drawn from a pool of canonical strings and shared immutable exit sets instead of being
+ * allocated again for every room.
+ * <p>
+ * Not thread safe, the protocol listener owns one instance.
+ *
+ * @author lauri
+ */
+public class MapperProtocolParser {
+
+    public static final String CHANNEL_PREFIX = "BAT_MAPPER";
+    public static final String EXIT_AREA_MESSAGE = "REALM_MAP";
+    private static final String SEPARATOR = ";;";
+
+    //batMap;areaname;roomUID;exitUsed;indoor boolean;shortDesc;longDesc;exits
+    private static final int AREA_NAME = 1;
+    private static final int ROOM_ID = 2;
+    private static final int EXIT_USED = 3;
+    private static final int IS_INDOORS = 4;
+    private static final int SHORT_DESC = 5;
+    private static final int LONG_DESC = 6;
+    private static final int EXITS = 7;
+
+    private static final int MESSAGE_LENGTH = 9;
+    private static final int EXIT_AREA_LENGTH = 2;
+
+    private static final int POOL_SIZE = 4096;
+    private static final int MAX_EXIT_SETS = 2048;
+
+    // field i is input[fieldStart[i], fieldEnd[i])
+    private final int[] fieldStart = new int[MESSAGE_LENGTH];
+    private final int[] fieldEnd = new int[MESSAGE_LENGTH];
+    private final StringBuilder descBuffer = new StringBuilder( 1024 );
+    private final TokenPool pool = new TokenPool( POOL_SIZE );
+    private final Map<String, Set<String>> exitSets = new HashMap<String, Set<String>>();
+    private String[] exitBuffer = new String[32];
+
+    /**
+     * @param input raw protocol message
+     * @return parsed event, or null if the message is not a complete BAT_MAPPER message
+     */
+    public MapperEvent parse( String input ) {
+        if (input == null || ! input.startsWith( CHANNEL_PREFIX )) {
+            return null;
+        }
+        int fields = splitFields( input );
+        if (fields == - 1 || fieldEnd[0] != CHANNEL_PREFIX.length()) {
+            return null;
+        }
+
+        if (fields == MESSAGE_LENGTH) {
+            int indoors = parseInt( input, fieldStart[IS_INDOORS], fieldEnd[IS_INDOORS] );
+            if (indoors == - 1) {
+                return null;
+            }
+            String areaName = pool.intern( input, fieldStart[AREA_NAME], fieldEnd[AREA_NAME] );
+            String roomUID = input.substring( fieldStart[ROOM_ID], fieldEnd[ROOM_ID] );
+            String exitUsed = pool.intern( input, fieldStart[EXIT_USED], fieldEnd[EXIT_USED] );
+            String shortDesc = input.substring( fieldStart[SHORT_DESC], fieldEnd[SHORT_DESC] );
+            String longDesc = joinLines( input, fieldStart[LONG_DESC], fieldEnd[LONG_DESC] );
+            Set<String> exits = exitSet( input, fieldStart[EXITS], fieldEnd[EXITS] );
+            return MapperEvent.room( areaName, roomUID, exitUsed, indoors != 0, shortDesc, longDesc, exits );
+        }
+
+        if (fields == EXIT_AREA_LENGTH && input.regionMatches( fieldStart[AREA_NAME], EXIT_AREA_MESSAGE, 0, EXIT_AREA_MESSAGE.length() )
+                && fieldEnd[AREA_NAME] - fieldStart[AREA_NAME] == EXIT_AREA_MESSAGE.length()) {
+            return MapperEvent.realmMap();
+        }
+        return null;
+    }
+
+    /**
+     * Records field boundaries the way input.split(";;", -1) would split it.
+     *
+     * @return number of fields, or -1 if there are more than a room message can have
+     */
+    private int splitFields( String input ) {
+        int count = 0;
+        int start = 0;
+        int separator;
+        while (( separator = input.indexOf( SEPARATOR, start ) ) != - 1) {
+            if (count == MESSAGE_LENGTH - 1) {
+                return - 1;
+            }
+            fieldStart[count] = start;
+            fieldEnd[count] = separator;
+            count++;
+            start = separator + SEPARATOR.length();
+        }
+        fieldStart[count] = start;
+        fieldEnd[count] = input.length();
+        return count + 1;
+    }
+
+    /**
+     * @return non negative integer value of the region, or -1 if it is not a number
+     */
+    private int parseInt( String input, int start, int end ) {
+        if (start == end) {
+            return - 1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt( i );
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE / 10) {
+                return - 1;
+            }
+            value = value * 10 + ( c - '0' );
+        }
+        return value;
+    }
+
+    /**
+     * Long descs arrive wrapped, the mapper shows them as one line.
+     */
+    private String joinLines( String input, int start, int end ) {
+        int newline = input.indexOf( '\n', start );
+        if (newline == - 1 || newline >= end) {
+            return input.substring( start, end );
+        }
+        descBuffer.setLength( 0 );
+        descBuffer.append( input, start, end );
+        for (int i = newline - start; i < descBuffer.length(); i++) {
+            if (descBuffer.charAt( i ) == '\n') {
+                descBuffer.setCharAt( i, ' ' );
+            }
+        }
+        return descBuffer.toString();
+    }
+
+    /**
+     * Splits the exits field on commas like String.split(",") does, trailing empty names are dropped.
+     * Rooms in the same area mostly share the same few exit lists, so each distinct list is turned into
+     * an immutable set only once.
+     */
+    private Set<String> exitSet( String input, int start, int end ) {
+        String field = pool.intern( input, start, end );
+        Set<String> exits = exitSets.get( field );
+        if (exits != null) {
+            return exits;
+        }
+
+        int count = 0;
+        int tokenStart = start;
+        boolean sawComma = false;
+        for (int i = start; i <= end; i++) {
+            if (i == end || input.charAt( i ) == ',') {
+                if (i < end) {
+                    sawComma = true;
+                } else if (! sawComma) {
+                    break;
+                }
+                if (count == exitBuffer.length) {
+                    exitBuffer = Arrays.copyOf( exitBuffer, count * 2 );
+                }
+                exitBuffer[count++] = pool.intern( input, tokenStart, i );
+                tokenStart = i + 1;
+            }
+        }
+        if (! sawComma) {
+            exitBuffer[count++] = field;
+        }
+        while (count > 0 && exitBuffer[count - 1].isEmpty() && sawComma) {
+            count--;
+        }
+
+        exits = Collections.unmodifiableSet( new LinkedHashSet<String>( Arrays.asList( exitBuffer ).subList( 0, count ) ) );
+        Arrays.fill( exitBuffer, 0, count, null );
+        if (exitSets.size() >= MAX_EXIT_SETS) {
+            exitSets.clear();
+        }
+        exitSets.put( field, exits );
+        return exits;
+    }
+
+    /**
+     * Fixed size table of canonical strings, looked up straight from a region of the input without
+     * creating a substring first. When the table fills up it is simply cleared.
+     */
+    static class TokenPool {
+
+        private final String[] table;
+        private final int mask;
+        private int size = 0;
+
+        TokenPool( int capacity ) {
+            int tableSize = Integer.highestOneBit( capacity - 1 ) << 1;
+            this.table = new String[tableSize];
+            this.mask = tableSize - 1;
+        }
+
+        String intern( String input, int start, int end ) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + input.charAt( i );
+            }
+            int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+            while (table[slot] != null) {
+                String candidate = table[slot];
+                if (candidate.length() == end - start && input.regionMatches( start, candidate, 0, end - start )) {
+                    return candidate;
+                }
+                slot = ( slot + 1 ) & mask;
+            }
+            if (size >= table.length / 2) {
+                Arrays.fill( table, null );
+                size = 0;
+                slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+            }
+            String token = input.substring( start, end );
+            table[slot] = token;
+            size++;
+            return token;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+}
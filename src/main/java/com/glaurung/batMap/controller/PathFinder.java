@@ -0,0 +1,104 @@
+package com.glaurung.batMap.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * Shortest paths between rooms of the current area, counted in exits. A breadth first search from the
+ * start room is done once and its tree is kept, so asking for the way to any other room from the same
+ * room is only a walk back along the tree. The tree is thrown away when the engine tells the graph has
+ * changed, when the graph itself is swapped for another area, or when asked from another room.
+ *
+ * @author lauri
+ */
+public class PathFinder {
+
+    private Graph<Room, Exit> treeGraph;
+    private Room treeSource;
+    private Map<Room, Exit> incoming = new HashMap<Room, Exit>();
+    private Map<Room, Room> previous = new HashMap<Room, Room>();
+
+    private long queries = 0;
+    private long searches = 0;
+
+    /**
+     * Called whenever rooms or exits are added to or removed from the graph.
+     */
+    public synchronized void invalidate() {
+        treeGraph = null;
+        treeSource = null;
+    }
+
+    /**
+     * @param graph
+     * @param from
+     * @param to
+     * @return exits to take from room from to room to, empty if they are the same room, or null if there is no known way
+     */
+    public synchronized List<Exit> getPath( Graph<Room, Exit> graph, Room from, Room to ) {
+        queries++;
+        if (from == null || to == null || ! graph.containsVertex( from ) || ! graph.containsVertex( to )) {
+            return null;
+        }
+        if (from.equals( to )) {
+            return Collections.emptyList();
+        }
+        if (graph != treeGraph || ! from.equals( treeSource )) {
+            search( graph, from );
+        }
+        if (! incoming.containsKey( to )) {
+            return null;
+        }
+        List<Exit> path = new ArrayList<Exit>();
+        for (Room room = to; ! room.equals( from ); room = previous.get( room )) {
+            path.add( incoming.get( room ) );
+        }
+        Collections.reverse( path );
+        return path;
+    }
+
+    private void search( Graph<Room, Exit> graph, Room from ) {
+        searches++;
+        incoming = new HashMap<Room, Exit>( graph.getVertexCount() * 2 );
+        previous = new HashMap<Room, Room>( graph.getVertexCount() * 2 );
+        ArrayDeque<Room> queue = new ArrayDeque<Room>();
+        queue.add( from );
+        previous.put( from, null );
+        while (! queue.isEmpty()) {
+            Room room = queue.poll();
+            for (Exit exit : graph.getOutEdges( room )) {
+                Room next = graph.getOpposite( room, exit );
+                if (next != null && ! previous.containsKey( next )) {
+                    previous.put( next, room );
+                    incoming.put( next, exit );
+                    queue.add( next );
+                }
+            }
+        }
+        treeGraph = graph;
+        treeSource = from;
+    }
+
+    public synchronized long getQueryCount() {
+        return queries;
+    }
+
+    public synchronized long getSearchCount() {
+        return searches;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format( "paths: %d queries, %d searches", queries, searches );
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.glaurung.batMap.controller;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import com.glaurung.batMap.io.ProtocolLog;
+
+/**
+ * Feeds a protocol recording back to a listener as if the client sent it, the listener parses the
+ * messages and hands them to the ingest like live ones. It runs on a thread of its own, so it needs a
+ * parser of its own too. Speed 1 keeps the recorded pacing, 2 plays twice as fast and so on, 0 sends
+ * everything as fast as the listener takes it.
+ *
+ * @author lauri
+ */
+public class ProtocolReplay implements Runnable {
+
+    private final File file;
+    private final ActionListener target;
+    private final double speed;
+    private volatile boolean stopped = false;
+    private volatile int count = 0;
+    private volatile long elapsedNanos = 0;
+    private volatile IOException error;
+
+    public ProtocolReplay( File file, ActionListener target, double speed ) {
+        this.file = file;
+        this.target = target;
+        this.speed = speed;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        try (ProtocolLog.Reader reader = ProtocolLog.open( file )) {
+            while (! stopped && reader.next()) {
+                if (speed > 0) {
+                    long due = start + (long) ( reader.getMillis() * 1000000 / speed );
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep( wait / 1000000, (int) ( wait % 1000000 ) );
+                    }
+                }
+                target.actionPerformed( new ActionEvent( this, ActionEvent.ACTION_PERFORMED, reader.getMessage() ) );
+                count++;
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * @return what stopped the replay early, or null
+     */
+    public IOException getError() {
+        return error;
+    }
+
+}
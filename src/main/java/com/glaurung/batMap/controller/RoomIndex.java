@@ -0,0 +1,96 @@
+package com.glaurung.batMap.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * Lookup tables for the rooms of the area currently in the engine: room uid to room, and lower cased
+ * label to room. The engine keeps this in sync with every vertex it adds to or removes from the graph,
+ * so moving around never has to scan the whole graph.
+ *
+ * @author lauri
+ */
+public class RoomIndex {
+
+    private final Map<String, Room> rooms = new HashMap<String, Room>();
+    private final Map<String, Room> labels = new HashMap<String, Room>();
+
+    /**
+     * Throws away everything indexed and indexes the given rooms instead, used when the area changes.
+     *
+     * @param areaRooms
+     */
+    public synchronized void rebuild( Collection<Room> areaRooms ) {
+        rooms.clear();
+        labels.clear();
+        for (Room room : areaRooms) {
+            add( room );
+        }
+    }
+
+    public synchronized void clear() {
+        rooms.clear();
+        labels.clear();
+    }
+
+    public synchronized void add( Room room ) {
+        rooms.put( room.getId(), room );
+        if (room.getLabel() != null) {
+            labels.put( key( room.getLabel() ), room );
+        }
+    }
+
+    public synchronized void remove( Room room ) {
+        rooms.remove( room.getId() );
+        if (room.getLabel() != null && labels.get( key( room.getLabel() ) ) == room) {
+            labels.remove( key( room.getLabel() ) );
+        }
+    }
+
+    public synchronized Room getRoom( String uid ) {
+        return rooms.get( uid );
+    }
+
+    /**
+     * Sets the label for a room and keeps the label lookup up to date, null removes the label.
+     *
+     * @param room
+     * @param label
+     */
+    public synchronized void setLabel( Room room, String label ) {
+        if (room.getLabel() != null && labels.get( key( room.getLabel() ) ) == room) {
+            labels.remove( key( room.getLabel() ) );
+        }
+        room.setLabel( label );
+        if (label != null) {
+            labels.put( key( label ), room );
+        }
+    }
+
+    /**
+     * @param label
+     * @return room with this label, case insensitive, or null
+     */
+    public synchronized Room getRoomWithLabel( String label ) {
+        return labels.get( key( label ) );
+    }
+
+    public synchronized List<Room> getLabeledRooms() {
+        return new ArrayList<Room>( labels.values() );
+    }
+
+    public synchronized int size() {
+        return rooms.size();
+    }
+
+    private String key( String label ) {
+        return label.toLowerCase( Locale.ENGLISH );
+    }
+
+}
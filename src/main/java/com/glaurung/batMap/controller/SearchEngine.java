@@ -22,6 +22,7 @@ public class SearchEngine extends MapperEngine implements ItemListener {
         this(plugin);
         this.graph = graph;
         this.mapperLayout.setGraph( graph );
+        this.roomIndex.rebuild( graph.getVertices() );
     }
 
     public SearchEngine(MapperPlugin plugin) {
@@ -32,10 +33,15 @@ public class SearchEngine extends MapperEngine implements ItemListener {
     public void moveToRoom( Room room, boolean highlight ) {
         moveToArea( room.getArea().getName() );
 
+        Room pickedRoom = room;
         for (Room aRoom : graph.getVertices()) {
+            if (aRoom.equals( room )) {
+                pickedRoom = aRoom;
+            }
 
             if (aRoom.equals( room ) && highlight) {
                 currentRoom = aRoom;
+                showAsCurrent( aRoom );
                 aRoom.setPicked( true );
                 aRoom.setCurrent( true );
             } else {
@@ -44,7 +50,7 @@ public class SearchEngine extends MapperEngine implements ItemListener {
             }
         }
 
-        singleRoomPicked(room);
+        singleRoomPicked(pickedRoom);
 //        pickedRoom = room;
 //        this.panel.setTextForDescs( pickedRoom.getShortDesc(), pickedRoom.getLongDesc(), makeExitsStringFromPickedRoom(), pickedRoom );
         repaint();
@@ -52,13 +58,7 @@ public class SearchEngine extends MapperEngine implements ItemListener {
     }
 
     public void save() {
-        try {
-            if (this.area != null) {
-                AreaDataPersister.save( baseDir, graph, mapperLayout );
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        saveCurrentArea();
     }
 
 
@@ -79,6 +79,8 @@ public class SearchEngine extends MapperEngine implements ItemListener {
         this.graph = areaSaveObject.getGraph();
         this.area = this.graph.getVertices().iterator().next().getArea();
         mapperLayout.displayLoadedData( areaSaveObject );
+        roomIndex.rebuild( graph.getVertices() );
+        markAreaSaved();
         if (! this.areaName.equalsIgnoreCase( this.mapperArea )) {
             savingAlreadyDisabled = false;
         }
@@ -0,0 +1,157 @@
+package com.glaurung.batMap.gui;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ConcurrentModificationException;
+
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.renderers.Renderer;
+
+/**
+ * Renderer wrapper that only paints rooms and exits inside the visible part of the map, and leaves out
+ * exit labels when zoomed out past the threshold in {@link RenderDetail}. Positions are mapped to the
+ * screen and checked against the component bounds, grown by a whole room so icons and exit labels at
+ * the edge still show.
+ *
+ * @author lauri
+ */
+public class CullingRenderer<V, E> implements Renderer<V, E> {
+
+    private static final double MARGIN = DrawingUtils.ROOM_SIZE;
+
+    private final Renderer<V, E> delegate;
+    private final RenderDetail detail;
+    private volatile int drawnVertices = 0;
+    private volatile int drawnEdges = 0;
+    private volatile int culledVertices = 0;
+    private volatile int culledEdges = 0;
+
+    public CullingRenderer( Renderer<V, E> delegate, RenderDetail detail ) {
+        this.delegate = delegate;
+        this.detail = detail;
+    }
+
+    @Override
+    public void render( RenderContext<V, E> renderContext, Layout<V, E> layout ) {
+        detail.update( renderContext );
+        MultiLayerTransformer transformer = renderContext.getMultiLayerTransformer();
+        Dimension size = renderContext.getScreenDevice().getSize();
+        double margin = MARGIN * transformer.getTransformer( Layer.VIEW ).getScale();
+        Rectangle2D visible = new Rectangle2D.Double( - margin, - margin, size.width + 2 * margin, size.height + 2 * margin );
+        boolean labels = detail.drawExitLabels();
+        Graph<V, E> graph = layout.getGraph();
+        int vertices = 0, edges = 0, skippedVertices = 0, skippedEdges = 0;
+
+        try {
+            for (E e : graph.getEdges()) {
+                Pair<V> ends = graph.getEndpoints( e );
+                Point2D from = transformer.transform( layout.transform( ends.getFirst() ) );
+                Point2D to = transformer.transform( layout.transform( ends.getSecond() ) );
+                if (! visible.intersectsLine( from.getX(), from.getY(), to.getX(), to.getY() )) {
+                    skippedEdges++;
+                    continue;
+                }
+                edges++;
+                renderEdge( renderContext, layout, e );
+                if (labels) {
+                    renderEdgeLabel( renderContext, layout, e );
+                }
+            }
+        } catch (ConcurrentModificationException cme) {
+            renderContext.getScreenDevice().repaint();
+        }
+
+        try {
+            for (V v : graph.getVertices()) {
+                Point2D p = transformer.transform( layout.transform( v ) );
+                if (! visible.contains( p )) {
+                    skippedVertices++;
+                    continue;
+                }
+                vertices++;
+                renderVertex( renderContext, layout, v );
+                renderVertexLabel( renderContext, layout, v );
+            }
+        } catch (ConcurrentModificationException cme) {
+            renderContext.getScreenDevice().repaint();
+        }
+
+        drawnVertices = vertices;
+        drawnEdges = edges;
+        culledVertices = skippedVertices;
+        culledEdges = skippedEdges;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "render: scale %.2f, last paint %d rooms %d exits drawn, %d rooms %d exits culled",
+                detail.getScale(), drawnVertices, drawnEdges, culledVertices, culledEdges );
+    }
+
+    @Override
+    public void renderVertex( RenderContext<V, E> renderContext, Layout<V, E> layout, V v ) {
+        delegate.renderVertex( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderVertexLabel( RenderContext<V, E> renderContext, Layout<V, E> layout, V v ) {
+        delegate.renderVertexLabel( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderEdge( RenderContext<V, E> renderContext, Layout<V, E> layout, E e ) {
+        delegate.renderEdge( renderContext, layout, e );
+    }
+
+    @Override
+    public void renderEdgeLabel( RenderContext<V, E> renderContext, Layout<V, E> layout, E e ) {
+        delegate.renderEdgeLabel( renderContext, layout, e );
+    }
+
+    @Override
+    public void setVertexRenderer( Vertex<V, E> r ) {
+        delegate.setVertexRenderer( r );
+    }
+
+    @Override
+    public void setEdgeRenderer( Edge<V, E> r ) {
+        delegate.setEdgeRenderer( r );
+    }
+
+    @Override
+    public void setVertexLabelRenderer( VertexLabel<V, E> r ) {
+        delegate.setVertexLabelRenderer( r );
+    }
+
+    @Override
+    public void setEdgeLabelRenderer( EdgeLabel<V, E> r ) {
+        delegate.setEdgeLabelRenderer( r );
+    }
+
+    @Override
+    public Vertex<V, E> getVertexRenderer() {
+        return delegate.getVertexRenderer();
+    }
+
+    @Override
+    public Edge<V, E> getEdgeRenderer() {
+        return delegate.getEdgeRenderer();
+    }
+
+    @Override
+    public VertexLabel<V, E> getVertexLabelRenderer() {
+        return delegate.getVertexLabelRenderer();
+    }
+
+    @Override
+    public EdgeLabel<V, E> getEdgeLabelRenderer() {
+        return delegate.getEdgeLabelRenderer();
+    }
+
+}
@@ -3,7 +3,10 @@ package com.glaurung.batMap.gui;
 import java.awt.Color;
 import java.awt.GradientPaint;
 import java.awt.Paint;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.commons.collections15.Predicate;
 import org.apache.commons.collections15.Transformer;
@@ -18,39 +21,79 @@ import edu.uci.ics.jung.graph.util.Context;
 import edu.uci.ics.jung.graph.util.Pair;
 import edu.uci.ics.jung.visualization.Layer;
 import edu.uci.ics.jung.visualization.VisualizationViewer;
-import edu.uci.ics.jung.visualization.transform.BidirectionalTransformer;
+import edu.uci.ics.jung.visualization.transform.MutableTransformer;
 
+/**
+ * Fills exits with a gradient from the color of the room they start from to the color of the room they
+ * lead to. The gradient of each exit is kept and given again as long as its rooms stay where they are with
+ * the same colors, and the layout isn't panned or zoomed, so painting an unchanged map allocates nothing.
+ */
 public class ExitPaintTransformer implements Transformer<Exit, Paint> {
 
     private static final Color INDOOR = new Color( 50, 50, 50 );
     private static final Color OUTDOOR = new Color( 8, 208, 55 );
     private VisualizationViewer<Room, Exit> vv;
-    protected BidirectionalTransformer transformer;
+    protected MutableTransformer transformer;
     protected Predicate<Context<Graph<Room, Exit>, Exit>> selfLoop = new SelfLoopEdgePredicate<Room, Exit>();
+    private final RenderDetail detail;
+    // exits are equal by name, so they are told apart by identity
+    private final Map<Exit, Gradient> gradients = new IdentityHashMap<Exit, Gradient>();
+    private final AffineTransform gradientTransform = new AffineTransform();
 
     public ExitPaintTransformer( VisualizationViewer<Room, Exit> vv ) {
+        this( vv, null );
+    }
+
+    /**
+     * @param vv
+     * @param detail when zoomed out past its gradient threshold exits get the color of the room they start from
+     */
+    public ExitPaintTransformer( VisualizationViewer<Room, Exit> vv, RenderDetail detail ) {
         this.vv = vv;
+        this.detail = detail;
         this.transformer = vv.getRenderContext().getMultiLayerTransformer().getTransformer( Layer.LAYOUT );
     }
 
     public Paint transform( Exit exit ) {
         Layout<Room, Exit> layout = vv.getGraphLayout();
-        Pair<Room> pair = layout.getGraph().getEndpoints( exit );
+        Graph<Room, Exit> graph = layout.getGraph();
+        Pair<Room> pair = graph.getEndpoints( exit );
         Room begin = pair.getFirst();
         Room end = pair.getSecond();
-        Point2D beginPoint = transformer.transform( layout.transform( begin ) );
-        Point2D endPoint = transformer.transform( layout.transform( end ) );
+        Color beginColor = getColorFor( begin );
+        if (detail != null && ! detail.drawGradients()) {
+            return beginColor;
+        }
+        Color endColor = getColorFor( end );
+        Point2D beginLocation = layout.transform( begin );
+        Point2D endLocation = layout.transform( end );
+
+        if (! gradientTransform.equals( transformer.getTransform() ) || gradients.size() > 2 * graph.getEdgeCount() + 64) {
+            // panned or zoomed, or holding many exits that are gone
+            gradients.clear();
+            gradientTransform.setTransform( transformer.getTransform() );
+        }
+        Gradient gradient = gradients.get( exit );
+        if (gradient != null && gradient.matches( beginLocation, endLocation, beginColor, endColor )) {
+            return gradient.paint;
+        }
+
+        Point2D beginPoint = transformer.transform( beginLocation );
+        Point2D endPoint = transformer.transform( endLocation );
         float xFirst = (float) beginPoint.getX();
         float yFirst = (float) beginPoint.getY();
         float xEnd = (float) endPoint.getX();
         float yEnd = (float) endPoint.getY();
 
-        if (selfLoop.evaluate( Context.<Graph<Room, Exit>, Exit>getInstance( layout.getGraph(), exit ) )) {
+        if (selfLoop.evaluate( Context.<Graph<Room, Exit>, Exit>getInstance( graph, exit ) )) {
             xEnd += 50;
             yEnd += 50;
         }
 
-        return new GradientPaint( xFirst, yFirst, getColorFor( begin ), xEnd, yEnd, getColorFor( end ), true );
+        gradient = new Gradient( beginLocation, endLocation, beginColor, endColor,
+                new GradientPaint( xFirst, yFirst, beginColor, xEnd, yEnd, endColor, true ) );
+        gradients.put( exit, gradient );
+        return gradient.paint;
     }
 
 
@@ -60,4 +103,29 @@ public class ExitPaintTransformer implements Transformer<Exit, Paint> {
         return OUTDOOR;
     }
 
+
+    /**
+     * Gradient of an exit and the layout locations and colors it was made for.
+     */
+    private static class Gradient {
+        final double beginX, beginY, endX, endY;
+        final Color beginColor, endColor;
+        final Paint paint;
+
+        Gradient( Point2D begin, Point2D end, Color beginColor, Color endColor, Paint paint ) {
+            this.beginX = begin.getX();
+            this.beginY = begin.getY();
+            this.endX = end.getX();
+            this.endY = end.getY();
+            this.beginColor = beginColor;
+            this.endColor = endColor;
+            this.paint = paint;
+        }
+
+        boolean matches( Point2D begin, Point2D end, Color beginColor, Color endColor ) {
+            return this.beginColor == beginColor && this.endColor == endColor && beginX == begin.getX() && beginY == begin.getY()
+                    && endX == end.getX() && endY == end.getY();
+        }
+    }
+
 }
@@ -0,0 +1,130 @@
+package com.glaurung.batMap.gui;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.List;
+
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.algorithms.layout.GraphElementAccessor;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.LayoutDecorator;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.Pair;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
+
+/**
+ * Pick support that first asks the grids of {@link MapperLayout} for the rooms and exits near the mouse,
+ * then leaves the exact hit test to ShapePickSupport, run over a small graph of just those. Picking works
+ * the same as before, but costs the handful of rooms near the mouse instead of every room and exit shape
+ * in the area.
+ *
+ * @author lauri
+ */
+public class GridPickSupport implements GraphElementAccessor<Room, Exit> {
+
+    /**
+     * how far from the mouse, in screen pixels at layout scale 1, a room or exit shape may still be hit
+     */
+    private static final double REACH = DrawingUtils.ROOM_SIZE;
+
+    private final VisualizationServer<Room, Exit> vv;
+    private final MapperLayout index;
+    private final ShapePickSupport<Room, Exit> shapes;
+
+    public GridPickSupport( VisualizationServer<Room, Exit> vv, MapperLayout index ) {
+        this.vv = vv;
+        this.index = index;
+        this.shapes = new ShapePickSupport<Room, Exit>( vv );
+    }
+
+    @Override
+    public Room getVertex( Layout<Room, Exit> layout, double x, double y ) {
+        List<Room> rooms = index.getRoomsIn( toLayout( new Rectangle2D.Double( x, y, 0, 0 ) ) );
+        if (rooms.isEmpty()) {
+            return null;
+        }
+        return shapes.getVertex( new Candidates( layout, graphOf( layout, rooms, null ) ), x, y );
+    }
+
+    @Override
+    public Collection<Room> getVertices( Layout<Room, Exit> layout, Shape rectangle ) {
+        List<Room> rooms = index.getRoomsIn( toLayout( rectangle.getBounds2D() ) );
+        return shapes.getVertices( new Candidates( layout, graphOf( layout, rooms, null ) ), rectangle );
+    }
+
+    @Override
+    public Exit getEdge( Layout<Room, Exit> layout, double x, double y ) {
+        List<Exit> exits = index.getExitsIn( toLayout( new Rectangle2D.Double( x, y, 0, 0 ) ) );
+        if (exits.isEmpty()) {
+            return null;
+        }
+        return shapes.getEdge( new Candidates( layout, graphOf( layout, null, exits ) ), x, y );
+    }
+
+    /**
+     * Maps a screen rectangle into layout coordinates, grown by REACH so shapes reaching into it count.
+     */
+    private Rectangle2D toLayout( Rectangle2D screen ) {
+        MultiLayerTransformer transformer = vv.getRenderContext().getMultiLayerTransformer();
+        Rectangle2D area = new Rectangle2D.Double();
+        area.setFrameFromDiagonal( transformer.inverseTransform( new Point2D.Double( screen.getMinX(), screen.getMinY() ) ),
+                transformer.inverseTransform( new Point2D.Double( screen.getMaxX(), screen.getMaxY() ) ) );
+        area.add( transformer.inverseTransform( new Point2D.Double( screen.getMinX(), screen.getMaxY() ) ) );
+        area.add( transformer.inverseTransform( new Point2D.Double( screen.getMaxX(), screen.getMinY() ) ) );
+        double margin = REACH / transformer.getTransformer( Layer.LAYOUT ).getScale();
+        area.setRect( area.getX() - margin, area.getY() - margin, area.getWidth() + 2 * margin, area.getHeight() + 2 * margin );
+        return area;
+    }
+
+    private static Graph<Room, Exit> graphOf( Layout<Room, Exit> layout, Collection<Room> rooms, Collection<Exit> exits ) {
+        Graph<Room, Exit> full = layout.getGraph();
+        SparseMultigraph<Room, Exit> graph = new SparseMultigraph<Room, Exit>();
+        if (rooms != null) {
+            for (Room room : rooms) {
+                graph.addVertex( room );
+            }
+        }
+        if (exits != null) {
+            for (Exit exit : exits) {
+                Pair<Room> ends = full.getEndpoints( exit );
+                if (ends == null) {
+                    // removed from the graph meanwhile
+                    continue;
+                }
+                try {
+                    graph.addEdge( exit, ends, full.getEdgeType( exit ) );
+                } catch (IllegalArgumentException e) {
+                    // same named exit with a colliding hash code, already there
+                }
+            }
+        }
+        return graph;
+    }
+
+
+    /**
+     * The layout as it is, but with only the candidates in its graph.
+     */
+    private static class Candidates extends LayoutDecorator<Room, Exit> {
+        private final Graph<Room, Exit> graph;
+
+        Candidates( Layout<Room, Exit> layout, Graph<Room, Exit> graph ) {
+            super( layout );
+            this.graph = graph;
+        }
+
+        @Override
+        public Graph<Room, Exit> getGraph() {
+            return graph;
+        }
+    }
+
+}
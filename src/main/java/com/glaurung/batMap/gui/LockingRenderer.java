@@ -0,0 +1,90 @@
+package com.glaurung.batMap.gui;
+
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.renderers.Renderer;
+
+/**
+ * Renderer wrapper that paints while holding the graph lock, so the mapper thread never mutates
+ * the graph or room locations in the middle of a paint on the EDT.
+ *
+ * @author lauri
+ */
+public class LockingRenderer<V, E> implements Renderer<V, E> {
+
+    private final Renderer<V, E> delegate;
+    private final Object lock;
+
+    public LockingRenderer( Renderer<V, E> delegate, Object lock ) {
+        this.delegate = delegate;
+        this.lock = lock;
+    }
+
+    @Override
+    public void render( RenderContext<V, E> renderContext, Layout<V, E> layout ) {
+        synchronized (lock) {
+            delegate.render( renderContext, layout );
+        }
+    }
+
+    @Override
+    public void renderVertex( RenderContext<V, E> renderContext, Layout<V, E> layout, V v ) {
+        delegate.renderVertex( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderVertexLabel( RenderContext<V, E> renderContext, Layout<V, E> layout, V v ) {
+        delegate.renderVertexLabel( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderEdge( RenderContext<V, E> renderContext, Layout<V, E> layout, E e ) {
+        delegate.renderEdge( renderContext, layout, e );
+    }
+
+    @Override
+    public void renderEdgeLabel( RenderContext<V, E> renderContext, Layout<V, E> layout, E e ) {
+        delegate.renderEdgeLabel( renderContext, layout, e );
+    }
+
+    @Override
+    public void setVertexRenderer( Vertex<V, E> r ) {
+        delegate.setVertexRenderer( r );
+    }
+
+    @Override
+    public void setEdgeRenderer( Edge<V, E> r ) {
+        delegate.setEdgeRenderer( r );
+    }
+
+    @Override
+    public void setVertexLabelRenderer( VertexLabel<V, E> r ) {
+        delegate.setVertexLabelRenderer( r );
+    }
+
+    @Override
+    public void setEdgeLabelRenderer( EdgeLabel<V, E> r ) {
+        delegate.setEdgeLabelRenderer( r );
+    }
+
+    @Override
+    public Vertex<V, E> getVertexRenderer() {
+        return delegate.getVertexRenderer();
+    }
+
+    @Override
+    public Edge<V, E> getEdgeRenderer() {
+        return delegate.getEdgeRenderer();
+    }
+
+    @Override
+    public VertexLabel<V, E> getVertexLabelRenderer() {
+        return delegate.getVertexLabelRenderer();
+    }
+
+    @Override
+    public EdgeLabel<V, E> getEdgeLabelRenderer() {
+        return delegate.getEdgeLabelRenderer();
+    }
+
+}
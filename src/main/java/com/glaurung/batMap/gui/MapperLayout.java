@@ -2,27 +2,67 @@ package com.glaurung.batMap.gui;
 
 import java.awt.Dimension;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import com.glaurung.batMap.vo.AreaSaveObject;
 import com.glaurung.batMap.vo.Exit;
 import com.glaurung.batMap.vo.Room;
 
 import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
-import edu.uci.ics.jung.algorithms.layout.GraphElementAccessor;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.util.Pair;
-import edu.uci.ics.jung.visualization.picking.RadiusPickSupport;
 
 
 /**
  * This class used for drawing a map from a graph, with preloaded locations or otherwise
+ * <p>
+ * Free spots for rooms are found from an occupancy grid of OCCUPIED_RADIUS sized cells, so checking a
+ * spot only looks at the rooms in the nine cells around it instead of every room in the area. Exits are
+ * kept in a coarser grid by the bounds of their ends, and both grids back picking, see
+ * {@link GridPickSupport}.
+ * <p>
+ * The layout also collects where the drawing of the map changed, as regions in layout coordinates, for
+ * the map tiles of {@link TiledRenderer} to redraw.
  *
  * @author lauri
  */
 public class MapperLayout extends AbstractLayout<Room, Exit> {
 
+    /**
+     * a spot closer than this to another room is taken
+     */
+    private static final double OCCUPIED_RADIUS = 60;
+    private static final double SHIFT = 20;
+    private static final double EXIT_CELL = 3 * OCCUPIED_RADIUS;
+    /**
+     * exits spanning more cells than this are kept in a list of their own and checked on every query
+     */
+    private static final long MAX_EXIT_CELLS = 256;
+    /**
+     * past this many changed regions the whole map is taken as changed
+     */
+    private static final int MAX_DIRTY = 512;
+
     boolean snapMode = true;
+    private final Map<Long, List<Room>> cells = new HashMap<Long, List<Room>>();
+    private final Map<Room, Long> roomCells = new HashMap<Room, Long>();
+    private final Map<Long, List<Exit>> exitCells = new HashMap<Long, List<Exit>>();
+    // exits are equal by name, so they are told apart by identity
+    private final Map<Exit, List<Long>> exitKeys = new IdentityHashMap<Exit, List<Long>>();
+    private final Map<Exit, Boolean> longExits = new IdentityHashMap<Exit, Boolean>();
+    private boolean cellsValid = false;
+    private final List<Rectangle2D> dirty = new ArrayList<Rectangle2D>();
+    private boolean allDirty = true;
 
     public MapperLayout( Graph<Room, Exit> graph ) {
         super( graph );
@@ -61,29 +101,250 @@ public class MapperLayout extends AbstractLayout<Room, Exit> {
         return returnable;
     }
 
+    /**
+     * Draws depth first from room, every room next to a drawn one goes to the first free spot in the
+     * direction of the exit. Uses its own stack instead of recursing, so long corridors can't overflow the
+     * call stack, but visits rooms in the same order as recursing did.
+     */
     private void iterativeDrawing( Room room, Point2D location ) {
         if (room.isDrawn())
             return;
-        placeRoomAndSetItDrawn( room, location );
-
-
-        Collection<Exit> exits = this.graph.getOutEdges( room );
-        for (Exit exit : exits) {
-            Room other = getOtherEndOfExit( exit, room );
-            Point2D positionForOtherRoom = DrawingUtils.getRelativePosition( location, exit, snapMode);
+        rebuildCells();
+        Deque<Placed> stack = new ArrayDeque<Placed>();
+        stack.push( place( room, location ) );
+        while (! stack.isEmpty()) {
+            Placed placed = stack.peek();
+            if (! placed.exits.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Exit exit = placed.exits.next();
+            Room other = getOtherEndOfExit( exit, placed.room );
+            if (other.isDrawn()) {
+                continue;
+            }
+            Point2D positionForOtherRoom = DrawingUtils.getRelativePosition( placed.location, exit, snapMode );
             positionForOtherRoom = getValidLocation( positionForOtherRoom );
-            iterativeDrawing( other, positionForOtherRoom );
+            stack.push( place( other, positionForOtherRoom ) );
         }
+    }
 
-
+    private Placed place( Room room, Point2D location ) {
+        placeRoomAndSetItDrawn( room, location );
+        return new Placed( room, location, new ArrayList<Exit>( this.graph.getOutEdges( room ) ).iterator() );
     }
 
 
     private void placeRoomAndSetItDrawn( Room room, Point2D location ) {
 //		System.out.println(room+" - "+location);
+        markDirty( room );
         Point2D coord = transform( room );
         coord.setLocation( location );
         room.setDrawn( true );
+        markMoved( room );
+    }
+
+    /**
+     * Moving a room changes its area, so that the move gets saved.
+     */
+    @Override
+    public void setLocation( Room room, Point2D location ) {
+        markDirty( room );
+        super.setLocation( room, location );
+        markMoved( room );
+    }
+
+    private void markMoved( Room room ) {
+        if (room.getArea() != null) {
+            room.getArea().markChanged();
+        }
+        markDirty( room );
+        synchronized (cells) {
+            if (cellsValid) {
+                index( room );
+                try {
+                    if (graph.containsVertex( room )) {
+                        for (Exit exit : new ArrayList<Exit>( graph.getIncidentEdges( room ) )) {
+                            indexExit( exit );
+                        }
+                    }
+                } catch (ConcurrentModificationException e) {
+                    // graph changed under us, build again when next needed
+                    invalidateCells();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the exit grid about an exit added between rooms that were already placed.
+     *
+     * @param exit
+     */
+    public void exitAdded( Exit exit ) {
+        synchronized (cells) {
+            if (cellsValid && graph.containsEdge( exit )) {
+                indexExit( exit );
+            }
+        }
+    }
+
+    /**
+     * Tells that the room looks different, or is about to move or be removed. Its exits are included.
+     *
+     * @param room
+     */
+    public void markDirty( Room room ) {
+        synchronized (dirty) {
+            if (allDirty) {
+                return;
+            }
+            Point2D location = transform( room );
+            addDirty( new Rectangle2D.Double( location.getX(), location.getY(), 0, 0 ) );
+            try {
+                if (graph.containsVertex( room )) {
+                    for (Exit exit : graph.getIncidentEdges( room )) {
+                        addDirty( exitBounds( exit ) );
+                    }
+                }
+            } catch (ConcurrentModificationException e) {
+                markAllDirty();
+            }
+        }
+    }
+
+    /**
+     * Tells that the exit looks different, or is about to be removed.
+     *
+     * @param exit
+     */
+    public void markDirty( Exit exit ) {
+        synchronized (dirty) {
+            if (! allDirty && graph.containsEdge( exit )) {
+                addDirty( exitBounds( exit ) );
+            }
+        }
+    }
+
+    public void markAllDirty() {
+        synchronized (dirty) {
+            allDirty = true;
+            dirty.clear();
+        }
+    }
+
+    /**
+     * Hands over the regions changed since the last call.
+     *
+     * @return changed regions in layout coordinates, or null if the whole map changed
+     */
+    public List<Rectangle2D> takeDirty() {
+        synchronized (dirty) {
+            if (allDirty) {
+                allDirty = false;
+                return null;
+            }
+            List<Rectangle2D> taken = new ArrayList<Rectangle2D>( dirty );
+            dirty.clear();
+            return taken;
+        }
+    }
+
+    private void addDirty( Rectangle2D region ) {
+        if (dirty.size() >= MAX_DIRTY) {
+            markAllDirty();
+        } else {
+            dirty.add( region );
+        }
+    }
+
+    /**
+     * @param area in layout coordinates
+     * @return rooms located inside area
+     */
+    public List<Room> getRoomsIn( Rectangle2D area ) {
+        List<Room> rooms = new ArrayList<Room>();
+        synchronized (cells) {
+            if (! cellsValid) {
+                rebuildCells();
+            }
+            long left = cell( area.getMinX() ), right = cell( area.getMaxX() );
+            long top = cell( area.getMinY() ), bottom = cell( area.getMaxY() );
+            if (( right - left + 1 ) * ( bottom - top + 1 ) > roomCells.size()) {
+                // zoomed far out, fewer rooms than cells to look at
+                for (Room room : roomCells.keySet()) {
+                    addIfInside( rooms, room, area );
+                }
+                return rooms;
+            }
+            for (long i = left; i <= right; i++) {
+                for (long j = top; j <= bottom; j++) {
+                    List<Room> cell = cells.get( key( i, j ) );
+                    if (cell != null) {
+                        for (Room room : cell) {
+                            addIfInside( rooms, room, area );
+                        }
+                    }
+                }
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * @param area in layout coordinates
+     * @return exits with both ends inside a rectangle that intersects area
+     */
+    public List<Exit> getExitsIn( Rectangle2D area ) {
+        Map<Exit, Boolean> found = new IdentityHashMap<Exit, Boolean>();
+        synchronized (cells) {
+            if (! cellsValid) {
+                rebuildCells();
+            }
+            long left = exitCell( area.getMinX() ), right = exitCell( area.getMaxX() );
+            long top = exitCell( area.getMinY() ), bottom = exitCell( area.getMaxY() );
+            for (Exit exit : longExits.keySet()) {
+                addIfCrossing( found, exit, area );
+            }
+            if (( right - left + 1 ) * ( bottom - top + 1 ) > exitKeys.size()) {
+                for (Exit exit : exitKeys.keySet()) {
+                    addIfCrossing( found, exit, area );
+                }
+            } else {
+                for (long i = left; i <= right; i++) {
+                    for (long j = top; j <= bottom; j++) {
+                        List<Exit> cell = exitCells.get( key( i, j ) );
+                        if (cell != null) {
+                            for (Exit exit : cell) {
+                                addIfCrossing( found, exit, area );
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<Exit>( found.keySet() );
+    }
+
+    private void addIfInside( List<Room> rooms, Room room, Rectangle2D area ) {
+        if (graph.containsVertex( room ) && area.contains( transform( room ) )) {
+            rooms.add( room );
+        }
+    }
+
+    private void addIfCrossing( Map<Exit, Boolean> found, Exit exit, Rectangle2D area ) {
+        if (! found.containsKey( exit ) && graph.containsEdge( exit ) && touches( exitBounds( exit ), area )) {
+            found.put( exit, Boolean.TRUE );
+        }
+    }
+
+    /**
+     * Rectangle2D.intersects is false for empty rectangles, which the bounds of straight north-south and
+     * east-west exits are.
+     */
+    private static boolean touches( Rectangle2D bounds, Rectangle2D area ) {
+        return bounds.getMaxX() >= area.getMinX() && bounds.getMinX() <= area.getMaxX()
+                && bounds.getMaxY() >= area.getMinY() && bounds.getMinY() <= area.getMaxY();
     }
 
 
@@ -109,8 +370,27 @@ public class MapperLayout extends AbstractLayout<Room, Exit> {
     }
 
 
+    @Override
+    public void setGraph( Graph<Room, Exit> graph ) {
+        super.setGraph( graph );
+        invalidateCells();
+        markAllDirty();
+    }
+
+    /**
+     * Resizing may shift every room without telling about each, so the grid is built again when needed.
+     */
+    @Override
+    public void setSize( Dimension size ) {
+        super.setSize( size );
+        invalidateCells();
+        markAllDirty();
+    }
+
     public void displayLoadedData( AreaSaveObject saveObject ) {
         this.graph = saveObject.getGraph();
+        invalidateCells();
+        markAllDirty();
         for (Room room : graph.getVertices()) {
 
             Point2D coord = transform( room );
@@ -120,15 +400,182 @@ public class MapperLayout extends AbstractLayout<Room, Exit> {
         }
     }
 
+    /**
+     * Moves the location up and left until no room is closer than OCCUPIED_RADIUS to it.
+     *
+     * @param checkThisLocation changed in place
+     * @return checkThisLocation
+     */
     public Point2D getValidLocation( Point2D checkThisLocation ) {
-        GraphElementAccessor<Room, Exit> pickSupport = new RadiusPickSupport<Room, Exit>( 60 );
-        Room room = pickSupport.getVertex( this, checkThisLocation.getX(), checkThisLocation.getY() );
-        if (room != null) {
-            checkThisLocation.setLocation( checkThisLocation.getX() - 20, checkThisLocation.getY() - 20 );
-            return getValidLocation( checkThisLocation );
+        synchronized (cells) {
+            if (! cellsValid) {
+                rebuildCells();
+            }
+            while (isOccupied( checkThisLocation.getX(), checkThisLocation.getY() )) {
+                checkThisLocation.setLocation( checkThisLocation.getX() - SHIFT, checkThisLocation.getY() - SHIFT );
+            }
         }
         return checkThisLocation;
     }
 
+    private boolean isOccupied( double x, double y ) {
+        long column = cell( x );
+        long row = cell( y );
+        for (long i = column - 1; i <= column + 1; i++) {
+            for (long j = row - 1; j <= row + 1; j++) {
+                List<Room> rooms = cells.get( key( i, j ) );
+                if (rooms == null) {
+                    continue;
+                }
+                Iterator<Room> iterator = rooms.iterator();
+                while (iterator.hasNext()) {
+                    Room room = iterator.next();
+                    if (! graph.containsVertex( room )) {
+                        // removed from the graph since it was indexed
+                        iterator.remove();
+                        roomCells.remove( room );
+                        continue;
+                    }
+                    Point2D location = transform( room );
+                    double dx = location.getX() - x;
+                    double dy = location.getY() - y;
+                    if (dx * dx + dy * dy < OCCUPIED_RADIUS * OCCUPIED_RADIUS) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void rebuildCells() {
+        synchronized (cells) {
+            while (true) {
+                clearCells();
+                try {
+                    for (Room room : graph.getVertices()) {
+                        index( room );
+                    }
+                    for (Exit exit : graph.getEdges()) {
+                        indexExit( exit );
+                    }
+                    break;
+                } catch (ConcurrentModificationException e) {
+                    // mapper thread added a room meanwhile, start over
+                }
+            }
+            cellsValid = true;
+        }
+    }
+
+    private void invalidateCells() {
+        synchronized (cells) {
+            cellsValid = false;
+            clearCells();
+        }
+    }
+
+    private void clearCells() {
+        cells.clear();
+        roomCells.clear();
+        exitCells.clear();
+        exitKeys.clear();
+        longExits.clear();
+    }
+
+    private void index( Room room ) {
+        Point2D location = transform( room );
+        Long key = key( cell( location.getX() ), cell( location.getY() ) );
+        Long old = roomCells.put( room, key );
+        if (key.equals( old )) {
+            return;
+        }
+        if (old != null) {
+            List<Room> oldCell = cells.get( old );
+            oldCell.remove( room );
+            if (oldCell.isEmpty()) {
+                cells.remove( old );
+            }
+        }
+        List<Room> cell = cells.get( key );
+        if (cell == null) {
+            cell = new ArrayList<Room>( 2 );
+            cells.put( key, cell );
+        }
+        cell.add( room );
+    }
+
+    private void indexExit( Exit exit ) {
+        List<Long> old = exitKeys.remove( exit );
+        if (old != null) {
+            for (Long key : old) {
+                List<Exit> cell = exitCells.get( key );
+                for (Iterator<Exit> iterator = cell.iterator(); iterator.hasNext(); ) {
+                    if (iterator.next() == exit) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    exitCells.remove( key );
+                }
+            }
+        }
+        longExits.remove( exit );
+        Rectangle2D bounds = exitBounds( exit );
+        long left = exitCell( bounds.getMinX() ), right = exitCell( bounds.getMaxX() );
+        long top = exitCell( bounds.getMinY() ), bottom = exitCell( bounds.getMaxY() );
+        if (( right - left + 1 ) * ( bottom - top + 1 ) > MAX_EXIT_CELLS) {
+            longExits.put( exit, Boolean.TRUE );
+            return;
+        }
+        List<Long> keys = new ArrayList<Long>();
+        for (long i = left; i <= right; i++) {
+            for (long j = top; j <= bottom; j++) {
+                Long key = key( i, j );
+                List<Exit> cell = exitCells.get( key );
+                if (cell == null) {
+                    cell = new ArrayList<Exit>( 2 );
+                    exitCells.put( key, cell );
+                }
+                cell.add( exit );
+                keys.add( key );
+            }
+        }
+        exitKeys.put( exit, keys );
+    }
+
+    private Rectangle2D exitBounds( Exit exit ) {
+        Pair<Room> ends = graph.getEndpoints( exit );
+        Rectangle2D bounds = new Rectangle2D.Double();
+        bounds.setFrameFromDiagonal( transform( ends.getFirst() ), transform( ends.getSecond() ) );
+        return bounds;
+    }
+
+    private static long cell( double coordinate ) {
+        return (long) Math.floor( coordinate / OCCUPIED_RADIUS );
+    }
+
+    private static long exitCell( double coordinate ) {
+        return (long) Math.floor( coordinate / EXIT_CELL );
+    }
+
+    private static Long key( long column, long row ) {
+        return ( column << 32 ) ^ ( row & 0xffffffffL );
+    }
+
+
+    private static class Placed {
+        final Room room;
+        final Point2D location;
+        final Iterator<Exit> exits;
+
+        Placed( Room room, Point2D location, Iterator<Exit> exits ) {
+            this.room = room;
+            this.location = location;
+            this.exits = exits;
+        }
+    }
+
 
 }
@@ -183,8 +183,13 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                 room = pickSupport.getVertex( layout, ip.getX(), ip.getY() );
                 if (room != null) {
                     if (pickedVertexState.isPicked( room ) == false) {
-                        pickedVertexState.clear();
-                        pickedVertexState.pick( room, true );
+                        beginSelection();
+                        try {
+                            pickedVertexState.clear();
+                            pickedVertexState.pick( room, true );
+                        } finally {
+                            endSelection();
+                        }
                     }
                     // layout.getLocation applies the layout transformer so
                     // q is transformed by the layout transformer only
@@ -200,7 +205,12 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                 } else {
 //                    vv.addPostRenderPaintable(lensPaintable);
                     pickedEdgeState.clear();
-                    pickedVertexState.clear();
+                    beginSelection();
+                    try {
+                        pickedVertexState.clear();
+                    } finally {
+                        endSelection();
+                    }
                 }
 
             } else if (e.getModifiers() == addToSelectionModifiers) {
@@ -246,7 +256,7 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
         exit = null;
         rect.setFrame( 0, 0, 0, 0 );
         vv.removePostRenderPaintable( lensPaintable );
-        vv.repaint();
+        repaint( vv );
     }
 
     /**
@@ -292,7 +302,7 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                 }
             }
             if (room != null) e.consume();
-            vv.repaint();
+            repaint( vv );
         }
     }
 
@@ -324,15 +334,20 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
         pickRectangle.setFrameFromDiagonal( down, out );
 
         if (pickedVertexState != null) {
-            if (clear) {
-                pickedVertexState.clear();
-            }
             GraphElementAccessor<Room, Exit> pickSupport = vv.getPickSupport();
 
             Collection<Room> picked = pickSupport.getVertices( layout, pickRectangle );
-            for (Room pickedRoom : picked) {
-                pickedRoom.setPicked(true);
-                pickedVertexState.pick( pickedRoom, true );
+            beginSelection();
+            try {
+                if (clear) {
+                    pickedVertexState.clear();
+                }
+                for (Room pickedRoom : picked) {
+                    pickedRoom.setPicked(true);
+                    pickedVertexState.pick( pickedRoom, true );
+                }
+            } finally {
+                endSelection();
             }
         }
     }
@@ -358,6 +373,13 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
 
         if( clickedRoom != null && e.isControlDown()){
            String dirs = this.engine.checkDirsFromCurrentRoomTo(clickedRoom, false);
+            if( dirs == null ){
+                JOptionPane.showMessageDialog(vv,
+                        "No known path from current room",
+                        "Dirs to "+clickedRoom.getShortDesc(),
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
             Object[] options = {"Ok",
                     "Send to mud",
                     "Send to party"};
@@ -394,7 +416,7 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                     clickedExit.getExit() );
 
             if (exitDir != null && ! exitDir.equals( "" )) {
-                clickedExit.setExit(exitDir);
+                this.engine.renameExit(clickedExit, exitDir);
             }
             vv.getPickedEdgeState().clear();
             return;
@@ -409,19 +431,27 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                 }
                 int response =  JOptionPane.showConfirmDialog(vv,"Do you wish to delete?\n"+roomdesc,"Room delete", JOptionPane.YES_NO_OPTION);
                 if( response == JOptionPane.YES_OPTION){
-                    for(Room deletedRoom: pickedState.getPicked()){
-                        vv.getGraphLayout().getGraph().removeVertex(deletedRoom);
+                    this.engine.removeRooms(pickedState.getPicked());
+                    beginSelection();
+                    try {
+                        pickedState.clear();
+                    } finally {
+                        endSelection();
                     }
-                    pickedState.clear();
                 }
             }else if(clickedExit != null && clickedRoom == null){
                 //right click on exit, ask to delete
                 vv.getPickedEdgeState().clear();
-                pickedState.clear();
+                beginSelection();
+                try {
+                    pickedState.clear();
+                } finally {
+                    endSelection();
+                }
                 vv.getPickedEdgeState().pick(clickedExit, true);
                 int retVal = JOptionPane.showConfirmDialog(vv, "Do you wish to delete this exit?\n"+clickedExit.getExit(), "Exit delete", JOptionPane.YES_NO_OPTION);
                 if(retVal == JOptionPane.YES_OPTION){
-                    vv.getGraphLayout().getGraph().removeEdge(clickedExit);
+                    this.engine.removeExit(clickedExit);
                     vv.getPickedEdgeState().clear();
                 }
             }
@@ -439,13 +469,18 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
                 }
             }
         }else{
-            for(Room room: pickedState.getPicked()){
-                room.setPicked(false);
-            }
-            pickedState.clear();
-            if(clickedRoom != null){
-                clickedRoom.setPicked(true);
-                pickedState.pick(clickedRoom, true);
+            beginSelection();
+            try {
+                for(Room room: pickedState.getPicked()){
+                    room.setPicked(false);
+                }
+                pickedState.clear();
+                if(clickedRoom != null){
+                    clickedRoom.setPicked(true);
+                    pickedState.pick(clickedRoom, true);
+                }
+            } finally {
+                endSelection();
             }
         }
     }
@@ -484,6 +519,32 @@ public class MapperPickingGraphMousePlugin extends AbstractGraphMousePlugin
         return Math.round(delta / (2 * DrawingUtils.ROOM_SIZE)) * 2 * DrawingUtils.ROOM_SIZE;
     }
 
+    /**
+     * Selection changes between this and endSelection repaint once, see {@link MapperEngine#beginSelection()}.
+     */
+    private void beginSelection() {
+        if (engine != null) {
+            engine.beginSelection();
+        }
+    }
+
+    private void endSelection() {
+        if (engine != null) {
+            engine.endSelection();
+        }
+    }
+
+    /**
+     * Repaints through the engine, so drags repaint at most once a frame, see {@link MapperEngine#repaint()}.
+     */
+    private void repaint( VisualizationViewer<Room, Exit> vv ) {
+        if (engine != null) {
+            engine.repaint();
+        } else {
+            vv.repaint();
+        }
+    }
+
     public void setEngine( MapperEngine engine ){
         this.engine = engine;
 
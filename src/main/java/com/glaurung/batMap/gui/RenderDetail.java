@@ -0,0 +1,85 @@
+package com.glaurung.batMap.gui;
+
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+
+/**
+ * How much detail to paint at the current zoom. Scale is the combined layout and view scale, 1 being
+ * the normal size. Below the thresholds rooms are painted as plain squares instead of icons, exit labels
+ * are left out and exits get flat colors instead of gradients. While reduced, during a zoom gesture, labels
+ * and gradients are left out at any zoom.
+ *
+ * @author lauri
+ */
+public class RenderDetail {
+
+    public static final double DEFAULT_ICON_SCALE = 0.3;
+    public static final double DEFAULT_LABEL_SCALE = 0.5;
+    public static final double DEFAULT_GRADIENT_SCALE = 0.3;
+
+    private volatile double iconScale = DEFAULT_ICON_SCALE;
+    private volatile double labelScale = DEFAULT_LABEL_SCALE;
+    private volatile double gradientScale = DEFAULT_GRADIENT_SCALE;
+    private volatile double scale = 1;
+    private volatile boolean reduced = false;
+
+    /**
+     * Reads the current zoom, called at the start of every paint.
+     *
+     * @param rc
+     */
+    public void update( RenderContext<?, ?> rc ) {
+        MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        scale = transformer.getTransformer( Layer.LAYOUT ).getScale() * transformer.getTransformer( Layer.VIEW ).getScale();
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public boolean drawIcons() {
+        return scale >= iconScale;
+    }
+
+    public boolean drawExitLabels() {
+        return ! reduced && scale >= labelScale;
+    }
+
+    public boolean drawGradients() {
+        return ! reduced && scale >= gradientScale;
+    }
+
+    public boolean isReduced() {
+        return reduced;
+    }
+
+    public void setReduced( boolean reduced ) {
+        this.reduced = reduced;
+    }
+
+    public double getIconScale() {
+        return iconScale;
+    }
+
+    public void setIconScale( double iconScale ) {
+        this.iconScale = iconScale;
+    }
+
+    public double getLabelScale() {
+        return labelScale;
+    }
+
+    public void setLabelScale( double labelScale ) {
+        this.labelScale = labelScale;
+    }
+
+    public double getGradientScale() {
+        return gradientScale;
+    }
+
+    public void setGradientScale( double gradientScale ) {
+        this.gradientScale = gradientScale;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.glaurung.batMap.gui;
+
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.visualization.VisualizationServer;
+
+/**
+ * Repaints the map view at most once a frame, however many times a repaint is asked for in between.
+ * The frame rate is capped at 60 per second, or what the batMap.maxFps system property says.
+ * <p>
+ * While the mouse wheel zooms the view is painted at reduced quality, without antialiasing, exit labels
+ * and gradients, see {@link RenderDetail#setReduced(boolean)}. Once the wheel has been still for a moment
+ * one full quality repaint follows. Panning keeps full quality, since it reuses the map tiles of
+ * {@link TiledRenderer} as they are.
+ *
+ * @author lauri
+ */
+public class RepaintScheduler implements ActionListener, MouseWheelListener {
+
+    public static final int DEFAULT_MAX_FPS = 60;
+    private static final int IDLE_MILLIS = 250;
+
+    private final VisualizationServer<Room, Exit> view;
+    private final RenderDetail detail;
+    private final Timer frame;
+    private final Timer idle;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final Runnable schedule = new Runnable() {
+        @Override
+        public void run() {
+            schedule();
+        }
+    };
+    private volatile long frameNanos;
+    private long lastRepaint = 0;
+    private Object antialiasing;
+
+    private final AtomicLong requested = new AtomicLong();
+    private volatile long repaints = 0;
+    private volatile long gestures = 0;
+
+    public RepaintScheduler( VisualizationServer<Room, Exit> view, RenderDetail detail ) {
+        this.view = view;
+        this.detail = detail;
+        setMaxFps( Integer.getInteger( "batMap.maxFps", DEFAULT_MAX_FPS ) );
+        frame = new Timer( 0, this );
+        frame.setRepeats( false );
+        idle = new Timer( IDLE_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed( ActionEvent e ) {
+                gestureEnded();
+            }
+        } );
+        idle.setRepeats( false );
+    }
+
+    public void setMaxFps( int fps ) {
+        frameNanos = 1000000000L / Math.max( 1, fps );
+    }
+
+    /**
+     * Asks for a repaint, made on the next frame. Safe to call from any thread.
+     */
+    public void repaint() {
+        requested.incrementAndGet();
+        if (pending.compareAndSet( false, true )) {
+            SwingUtilities.invokeLater( schedule );
+        }
+    }
+
+    private void schedule() {
+        long wait = lastRepaint + frameNanos - System.nanoTime();
+        if (wait <= 0) {
+            repaintNow();
+        } else {
+            frame.setInitialDelay( (int) ( ( wait + 999999 ) / 1000000 ) );
+            frame.restart();
+        }
+    }
+
+    @Override
+    public void actionPerformed( ActionEvent e ) {
+        repaintNow();
+    }
+
+    private void repaintNow() {
+        pending.set( false );
+        lastRepaint = System.nanoTime();
+        repaints++;
+        view.repaint();
+    }
+
+    /**
+     * Zooming, paint at reduced quality until the wheel stops.
+     */
+    @Override
+    public void mouseWheelMoved( MouseWheelEvent e ) {
+        if (! detail.isReduced()) {
+            gestures++;
+            detail.setReduced( true );
+            Map<RenderingHints.Key, Object> hints = view.getRenderingHints();
+            antialiasing = hints.put( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF );
+        }
+        idle.restart();
+    }
+
+    private void gestureEnded() {
+        detail.setReduced( false );
+        Map<RenderingHints.Key, Object> hints = view.getRenderingHints();
+        if (antialiasing != null) {
+            hints.put( RenderingHints.KEY_ANTIALIASING, antialiasing );
+        } else {
+            hints.remove( RenderingHints.KEY_ANTIALIASING );
+        }
+        repaint();
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "repaints: %d asked, %d painted, cap %d fps, %d zoom gestures",
+                requested.get(), repaints, 1000000000L / frameNanos, gestures );
+    }
+
+}
@@ -2,8 +2,9 @@ package com.glaurung.batMap.gui;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.HashMap;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -12,75 +13,200 @@ import org.apache.commons.collections15.Transformer;
 
 import com.glaurung.batMap.vo.Room;
 
+/**
+ * Draws room icons. Rooms that look the same share one icon: icons are cached by a render key made of
+ * exit bits, indoors, maze explored, color, picked and current, so painting does not draw new images.
+ */
 public class RoomIconTransformer implements Transformer<Room, Icon> {
 
     private final int WIDTH= 90;
     private final int HEIGHT = 90;
 
+    private static final int MAX_CACHED_ICONS = 1024;
+
+    private static final int N = 1;
+    private static final int NE = 1 << 1;
+    private static final int E = 1 << 2;
+    private static final int SE = 1 << 3;
+    private static final int S = 1 << 4;
+    private static final int SW = 1 << 5;
+    private static final int W = 1 << 6;
+    private static final int NW = 1 << 7;
+    private static final int U = 1 << 8;
+    private static final int D = 1 << 9;
+    private static final int SPECIAL = 1 << 10;
+    private static final int INDOORS = 1 << 11;
+    private static final int EXPLORED = 1 << 12;
+    private static final int PICKED = 1 << 13;
+    private static final int CURRENT = 1 << 14;
+    private static final int COLORED = 1 << 15;
+
+    private final Map<Long, Icon> icons = new LinkedHashMap<Long, Icon>( 64, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Long, Icon> eldest ) {
+            return size() > MAX_CACHED_ICONS;
+        }
+    };
+    private long hits = 0;
+    private long misses = 0;
+    private final RenderDetail detail;
+
     public RoomIconTransformer() {
+        this( null );
+    }
+
+    /**
+     * @param detail when zoomed out past its icon threshold no icon is given, and the room is painted as a plain shape
+     */
+    public RoomIconTransformer( RenderDetail detail ) {
+        this.detail = detail;
     }
 
 
     @Override
     public Icon transform( Room room ) {
-        return new ImageIcon(drawRoom(room));
+        return icon( room, true );
+    }
+
+    /**
+     * @return transformer giving the icons without the picked and current borders, the map tiles are
+     * drawn with these and the highlights painted over them, see {@link TiledRenderer}
+     */
+    public Transformer<Room, Icon> withoutHighlights() {
+        return new Transformer<Room, Icon>() {
+            @Override
+            public Icon transform( Room room ) {
+                return icon( room, false );
+            }
+        };
+    }
+
+    private synchronized Icon icon( Room room, boolean highlights ) {
+        if (detail != null && ! detail.drawIcons()) {
+            return null;
+        }
+        long key = renderKey( room );
+        if (! highlights) {
+            key &= ~ (long) ( PICKED | CURRENT );
+        }
+        Icon icon = icons.get( key );
+        if (icon == null) {
+            misses++;
+            icon = new ImageIcon(drawRoom(room, (int) key));
+            icons.put( key, icon );
+        } else {
+            hits++;
+        }
+        return icon;
     }
 
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
 
-    private HashMap<String, Boolean> getExitsMap( Set<String> exits ) {
-        HashMap<String, Boolean> exitsmap = new HashMap<>();
-        exitsmap.put("n", false);
-        exitsmap.put("ne", false);
-        exitsmap.put("e", false);
-        exitsmap.put("se", false);
-        exitsmap.put("s", false);
-        exitsmap.put("sw", false);
-        exitsmap.put("w", false);
-        exitsmap.put("nw", false);
-        exitsmap.put("u", false);
-        exitsmap.put("d", false);
-        exitsmap.put("special", false);
+    public synchronized int getCachedIconCount() {
+        return icons.size();
+    }
 
+    @Override
+    public synchronized String toString() {
+        return String.format( "icons: %d cached, %d hits, %d misses", icons.size(), hits, misses );
+    }
+
+    /**
+     * @return color for a room painted without its icon
+     */
+    public static Color getFillColor( Room room ) {
+        if (room.isCurrent()) {
+            return RoomColors.CURRENT;
+        } else if (room.isPicked()) {
+            return RoomColors.PICKED;
+        }
+        return getBaseFillColor( room );
+    }
+
+    /**
+     * @return color for a room painted without its icon, leaving out picked and current
+     */
+    public static Color getBaseFillColor( Room room ) {
+        if (room.allExitsHaveBeenUSed()) {
+            return RoomColors.MAZEMODE_FULLYEXPLORED;
+        } else if (room.getColor() != null) {
+            return room.getColor();
+        }
+        return room.isIndoors() ? RoomColors.INDOOR : RoomColors.OUTDOOR;
+    }
+
+    /**
+     * @return color argb in high 32 bits, flags and exit bits in low 32 bits
+     */
+    private long renderKey( Room room ) {
+        int flags = getExitBits( room.getExits() );
+        if (room.isIndoors()) {
+            flags |= INDOORS;
+        }
+        if (room.allExitsHaveBeenUSed()) {
+            flags |= EXPLORED;
+        }
+        if (room.isPicked()) {
+            flags |= PICKED;
+        }
+        if (room.isCurrent()) {
+            flags |= CURRENT;
+        }
+        long color = 0;
+        if (room.getColor() != null) {
+            flags |= COLORED;
+            color = room.getColor().getRGB();
+        }
+        return ( color << 32 ) | ( flags & 0xFFFFFFFFL );
+    }
 
+    private int getExitBits( Set<String> exits ) {
+        int bits = 0;
         for (String exit : exits) {
             if (exit.equalsIgnoreCase( "n" ) || exit.equalsIgnoreCase( "north" )) {
-                exitsmap.put("n", true);
+                bits |= N;
             } else if (exit.equalsIgnoreCase( "e" ) || exit.equalsIgnoreCase( "east" )) {
-                exitsmap.put("e", true);
+                bits |= E;
             } else if (exit.equalsIgnoreCase( "s" ) || exit.equalsIgnoreCase( "south" )) {
-                exitsmap.put("s", true);
+                bits |= S;
             } else if (exit.equalsIgnoreCase( "w" ) || exit.equalsIgnoreCase( "west" )) {
-                exitsmap.put("w", true);
+                bits |= W;
             } else if (exit.equalsIgnoreCase( "ne" ) || exit.equalsIgnoreCase( "northeast" )) {
-                exitsmap.put("ne", true);
+                bits |= NE;
             } else if (exit.equalsIgnoreCase( "nw" ) || exit.equalsIgnoreCase( "northwest" )) {
-                exitsmap.put("nw", true);
+                bits |= NW;
             } else if (exit.equalsIgnoreCase( "se" ) || exit.equalsIgnoreCase( "southeast" )) {
-                exitsmap.put("se", true);
+                bits |= SE;
             } else if (exit.equalsIgnoreCase( "sw" ) || exit.equalsIgnoreCase( "southwest" )) {
-                exitsmap.put("sw", true);
+                bits |= SW;
             } else if (exit.equalsIgnoreCase( "u" ) || exit.equalsIgnoreCase( "up" )) {
-                exitsmap.put("u", true);
+                bits |= U;
             } else if (exit.equalsIgnoreCase( "d" ) || exit.equalsIgnoreCase( "down" )) {
-                exitsmap.put("d", true);
+                bits |= D;
             } else {
-                exitsmap.put("special", true);
+                bits |= SPECIAL;
             }
         }
-        return exitsmap;
+        return bits;
     }
 
 
-    private BufferedImage drawRoom(Room room ){
+    private BufferedImage drawRoom(Room room, int flags ){
         BufferedImage newgfx = new BufferedImage(90, 90, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = newgfx.createGraphics();
         g.setColor(RoomColors.OUTDOOR);
-        if(room.isIndoors()){
+        if(( flags & INDOORS ) != 0){
             g.setColor(RoomColors.INDOOR);
         }
         Color exitColor = RoomColors.EXIT;
 
-        if(room.allExitsHaveBeenUSed()){
+        if(( flags & EXPLORED ) != 0){
             g.setColor(RoomColors.MAZEMODE_FULLYEXPLORED);
             exitColor = RoomColors.LIGHT_EXIT;
         }else if(room.getColor() != null){
@@ -93,30 +219,29 @@ public class RoomIconTransformer implements Transformer<Room, Icon> {
 
         g.fillRect(newgfx.getMinX(), newgfx.getMinY(), newgfx.getWidth(), newgfx.getHeight());
 
-        HashMap<String, Boolean> exitsMap = getExitsMap(room.getExits());
         g.setStroke(new BasicStroke(5));
         g.setColor(exitColor);
 
-        drawNorth(g, exitsMap.get("n"));
-        drawNE(g, exitsMap.get("ne"));
-        drawEast(g, exitsMap.get("e"));
-        drawSE(g, exitsMap.get("se"));
-        drawSouth(g, exitsMap.get("s"));
-        drawSW(g, exitsMap.get("sw"));
-        drawWest(g, exitsMap.get("w"));
-        drawNW(g, exitsMap.get("nw"));
-        if(exitsMap.get("u")){
+        drawNorth(g, ( flags & N ) != 0);
+        drawNE(g, ( flags & NE ) != 0);
+        drawEast(g, ( flags & E ) != 0);
+        drawSE(g, ( flags & SE ) != 0);
+        drawSouth(g, ( flags & S ) != 0);
+        drawSW(g, ( flags & SW ) != 0);
+        drawWest(g, ( flags & W ) != 0);
+        drawNW(g, ( flags & NW ) != 0);
+        if(( flags & U ) != 0){
             drawU(g);
         }
-        if(exitsMap.get("d")){
+        if(( flags & D ) != 0){
             drawD(g);
         }
-        if(exitsMap.get("special")){
+        if(( flags & SPECIAL ) != 0){
             drawSpecial(g);
         }
 
         g.dispose();
-        if(room.isPicked()){
+        if(( flags & PICKED ) != 0){
             BufferedImage pickedRoom = new BufferedImage(96, 96, BufferedImage.TYPE_INT_RGB);
             g = pickedRoom.createGraphics();
             g.setColor(RoomColors.PICKED);
@@ -126,12 +251,12 @@ public class RoomIconTransformer implements Transformer<Room, Icon> {
             newgfx = pickedRoom;
         }
 
-        if(room.isCurrent()){
+        if(( flags & CURRENT ) != 0){
             BufferedImage currentRoom = new BufferedImage(102, 102, BufferedImage.TYPE_INT_RGB);
             g = currentRoom.createGraphics();
             g.setColor(RoomColors.CURRENT);
             g.fillRect(0,0,102,102);
-            if(room.isPicked()){
+            if(( flags & PICKED ) != 0){
                 g.drawImage(newgfx,3,3,96,96, null);
             }else {
                 g.drawImage(newgfx,6,6,90,90, null);
@@ -0,0 +1,382 @@
+package com.glaurung.batMap.gui;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.Icon;
+import javax.swing.JComponent;
+
+import org.apache.commons.collections15.Transformer;
+
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.visualization.BasicTransformer;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.picking.PickedState;
+import edu.uci.ics.jung.visualization.renderers.Renderer;
+import edu.uci.ics.jung.visualization.transform.shape.GraphicsDecorator;
+
+/**
+ * Renderer wrapper that keeps the map drawn into TILE sized images at the current zoom, and paints the
+ * images instead of the rooms and exits. Only tiles that {@link MapperLayout} reports changed are drawn
+ * again, and zooming drops them all. Tiles have rooms without their picked and current borders, the
+ * picked rooms and the current room are painted over the tiles on every paint, so walking around costs
+ * a few tiles at most however big the area is.
+ * <p>
+ * Tiles are placed by layout coordinates times the scale, so panning reuses them. Rotated views and
+ * screens smaller than a tile are painted by the delegate as before.
+ *
+ * @author lauri
+ */
+public class TiledRenderer implements Renderer<Room, Exit> {
+
+    private static final int TILE = 256;
+    /**
+     * how far past a tile, in pixels at layout scale 1, rooms and exits drawn into it may reach
+     */
+    private static final double REACH = 2 * DrawingUtils.ROOM_SIZE;
+    private static final int SPARE_IMAGES = 16;
+
+    private final Renderer<Room, Exit> delegate;
+    private final RenderDetail detail;
+    private final MapperLayout index;
+    private final Transformer<Room, Icon> plainIcons;
+    private final Transformer<Room, Paint> plainFill = new Transformer<Room, Paint>() {
+        @Override
+        public Paint transform( Room room ) {
+            return RoomIconTransformer.getBaseFillColor( room );
+        }
+    };
+
+    private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>( 64, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Long, BufferedImage> eldest ) {
+            if (size() > maxTiles) {
+                spare( eldest.getValue() );
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Deque<BufferedImage> spareImages = new ArrayDeque<BufferedImage>();
+    private int maxTiles = 64;
+    private double tileScale = 0;
+    private boolean tileLabels;
+    private boolean tileIcons;
+    private boolean tileGradients;
+    private boolean tileReduced;
+    private BasicTransformer tileTransformer;
+    private volatile Room currentRoom;
+
+    private volatile long tilesDrawn = 0;
+    private volatile long tilesReused = 0;
+    private volatile int overlayRooms = 0;
+    private volatile long fullPaints = 0;
+
+    /**
+     * @param delegate   draws single rooms and exits, and whole paints when tiles can't be used
+     * @param detail
+     * @param index      layout of the map, telling where rooms and exits are and what changed
+     * @param icons      room icons, tiles use the ones without highlights
+     */
+    public TiledRenderer( Renderer<Room, Exit> delegate, RenderDetail detail, MapperLayout index, RoomIconTransformer icons ) {
+        this.delegate = delegate;
+        this.detail = detail;
+        this.index = index;
+        this.plainIcons = icons.withoutHighlights();
+    }
+
+    /**
+     * @param room painted over the tiles with its current border, may be null
+     */
+    public void setCurrentRoom( Room room ) {
+        this.currentRoom = room;
+    }
+
+    @Override
+    public void render( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout ) {
+        detail.update( renderContext );
+        MultiLayerTransformer transformer = renderContext.getMultiLayerTransformer();
+        JComponent screen = renderContext.getScreenDevice();
+        Dimension size = screen.getSize();
+        AffineTransform view = transformer.getTransformer( Layer.VIEW ).getTransform();
+        AffineTransform combined = new AffineTransform( view );
+        combined.concatenate( transformer.getTransformer( Layer.LAYOUT ).getTransform() );
+        double scale = combined.getScaleX();
+        // the renderers skip what is off screen, so a tile has to fit on the screen to get everything
+        if (combined.getShearX() != 0 || combined.getShearY() != 0 || combined.getScaleY() != scale
+                || size.width < TILE || size.height < TILE) {
+            dropTiles();
+            fullPaints++;
+            delegate.render( renderContext, layout );
+            return;
+        }
+        Graphics2D g = renderContext.getGraphicsContext().getDelegate();
+        AffineTransform device = g.getTransform();
+        try {
+            device.concatenate( view.createInverse() );
+        } catch (NoninvertibleTransformException e) {
+            return;
+        }
+
+        if (scale != tileScale || detail.drawExitLabels() != tileLabels || detail.drawIcons() != tileIcons
+                || detail.drawGradients() != tileGradients || detail.isReduced() != tileReduced) {
+            dropTiles();
+            tileScale = scale;
+            tileLabels = detail.drawExitLabels();
+            tileIcons = detail.drawIcons();
+            tileGradients = detail.drawGradients();
+            tileReduced = detail.isReduced();
+        }
+        double margin = REACH / transformer.getTransformer( Layer.LAYOUT ).getScale();
+        List<Rectangle2D> dirty = index.takeDirty();
+        if (dirty == null) {
+            dropTiles();
+        } else {
+            for (Rectangle2D region : dirty) {
+                dropTiles( region, margin );
+            }
+        }
+
+        double tx = combined.getTranslateX();
+        double ty = combined.getTranslateY();
+        long left = (long) Math.floor( - tx / TILE ), right = (long) Math.floor( ( size.width - tx ) / TILE );
+        long top = (long) Math.floor( - ty / TILE ), bottom = (long) Math.floor( ( size.height - ty ) / TILE );
+        maxTiles = (int) ( 2 * ( right - left + 1 ) * ( bottom - top + 1 ) + 8 );
+
+        AffineTransform old = g.getTransform();
+        for (long i = left; i <= right; i++) {
+            for (long j = top; j <= bottom; j++) {
+                Long key = key( i, j );
+                double x = Math.round( i * TILE + tx ), y = Math.round( j * TILE + ty );
+                BufferedImage image = tiles.get( key );
+                if (image == null) {
+                    image = drawTile( renderContext, layout, view, x, y, scale, margin );
+                    tiles.put( key, image );
+                    tilesDrawn++;
+                } else {
+                    tilesReused++;
+                }
+                g.setTransform( device );
+                g.drawImage( image, (int) x, (int) y, null );
+                g.setTransform( old );
+            }
+        }
+
+        renderOverlay( renderContext, layout, combined, size );
+    }
+
+    /**
+     * Draws one tile, whose top left corner is at x, y on the screen right now.
+     */
+    private BufferedImage drawTile( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, AffineTransform view,
+                                    double x, double y, double scale, double margin ) {
+        BufferedImage image = spareImages.poll();
+        if (image == null) {
+            image = new BufferedImage( TILE, TILE, BufferedImage.TYPE_INT_RGB );
+        }
+        GraphicsDecorator graphicsContext = renderContext.getGraphicsContext();
+        Graphics2D screen = graphicsContext.getDelegate();
+        Graphics2D g = image.createGraphics();
+        g.setColor( renderContext.getScreenDevice().getBackground() );
+        g.fillRect( 0, 0, TILE, TILE );
+        g.setRenderingHints( screen.getRenderingHints() );
+        AffineTransform tileView = AffineTransform.getTranslateInstance( - x, - y );
+        tileView.concatenate( view );
+        g.setTransform( tileView );
+
+        MultiLayerTransformer transformer = renderContext.getMultiLayerTransformer();
+        if (tileTransformer == null) {
+            tileTransformer = new BasicTransformer();
+        }
+        tileTransformer.getTransformer( Layer.LAYOUT ).setToIdentity();
+        tileTransformer.getTransformer( Layer.LAYOUT ).concatenate( transformer.getTransformer( Layer.LAYOUT ).getTransform() );
+        tileTransformer.getTransformer( Layer.VIEW ).setToIdentity();
+        tileTransformer.getTransformer( Layer.VIEW ).concatenate( tileView );
+
+        Transformer<Room, Icon> icons = renderContext.getVertexIconTransformer();
+        Transformer<Room, Paint> fill = renderContext.getVertexFillPaintTransformer();
+        graphicsContext.setDelegate( g );
+        renderContext.setMultiLayerTransformer( tileTransformer );
+        renderContext.setVertexIconTransformer( plainIcons );
+        renderContext.setVertexFillPaintTransformer( plainFill );
+        try {
+            Point2D corner = transformer.inverseTransform( new Point2D.Double( x, y ) );
+            Rectangle2D area = new Rectangle2D.Double( corner.getX() - margin, corner.getY() - margin,
+                    TILE / scale + 2 * margin, TILE / scale + 2 * margin );
+            boolean labels = detail.drawExitLabels();
+            for (Exit exit : index.getExitsIn( area )) {
+                delegate.renderEdge( renderContext, layout, exit );
+                if (labels) {
+                    delegate.renderEdgeLabel( renderContext, layout, exit );
+                }
+            }
+            for (Room room : index.getRoomsIn( area )) {
+                delegate.renderVertex( renderContext, layout, room );
+                delegate.renderVertexLabel( renderContext, layout, room );
+            }
+        } finally {
+            renderContext.setVertexFillPaintTransformer( fill );
+            renderContext.setVertexIconTransformer( icons );
+            renderContext.setMultiLayerTransformer( transformer );
+            graphicsContext.setDelegate( screen );
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Paints the picked rooms and the current room over the tiles.
+     */
+    private void renderOverlay( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, AffineTransform combined,
+                                Dimension size ) {
+        double margin = DrawingUtils.ROOM_SIZE * renderContext.getMultiLayerTransformer().getTransformer( Layer.VIEW ).getScale();
+        Rectangle2D visible = new Rectangle2D.Double( - margin, - margin, size.width + 2 * margin, size.height + 2 * margin );
+        PickedState<Room> picked = renderContext.getPickedVertexState();
+        List<Room> rooms = new ArrayList<Room>( picked.getPicked() );
+        Room current = currentRoom;
+        if (current != null && current.isCurrent() && ! picked.isPicked( current )) {
+            rooms.add( current );
+        }
+        int painted = 0;
+        for (Room room : rooms) {
+            if (! layout.getGraph().containsVertex( room ) || ! visible.contains( combined.transform( layout.transform( room ), null ) )) {
+                continue;
+            }
+            delegate.renderVertex( renderContext, layout, room );
+            delegate.renderVertexLabel( renderContext, layout, room );
+            painted++;
+        }
+        overlayRooms = painted;
+    }
+
+    /**
+     * Drops the tiles that rooms and exits in the region, grown by margin, are drawn into.
+     */
+    private void dropTiles( Rectangle2D region, double margin ) {
+        long left = (long) Math.floor( ( region.getMinX() - margin ) * tileScale / TILE );
+        long right = (long) Math.floor( ( region.getMaxX() + margin ) * tileScale / TILE );
+        long top = (long) Math.floor( ( region.getMinY() - margin ) * tileScale / TILE );
+        long bottom = (long) Math.floor( ( region.getMaxY() + margin ) * tileScale / TILE );
+        if (( right - left + 1 ) * ( bottom - top + 1 ) > tiles.size()) {
+            for (Iterator<Map.Entry<Long, BufferedImage>> iterator = tiles.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<Long, BufferedImage> tile = iterator.next();
+                long i = tile.getKey() >> 32, j = (int) tile.getKey().longValue();
+                if (i >= left && i <= right && j >= top && j <= bottom) {
+                    spare( tile.getValue() );
+                    iterator.remove();
+                }
+            }
+            return;
+        }
+        for (long i = left; i <= right; i++) {
+            for (long j = top; j <= bottom; j++) {
+                BufferedImage image = tiles.remove( key( i, j ) );
+                if (image != null) {
+                    spare( image );
+                }
+            }
+        }
+    }
+
+    private void dropTiles() {
+        for (BufferedImage image : tiles.values()) {
+            spare( image );
+        }
+        tiles.clear();
+    }
+
+    private void spare( BufferedImage image ) {
+        if (spareImages.size() < SPARE_IMAGES) {
+            spareImages.push( image );
+        }
+    }
+
+    private static Long key( long column, long row ) {
+        return ( column << 32 ) ^ ( row & 0xffffffffL );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "tiles: %d cached, %d drawn, %d reused, %d rooms over the last paint, %d paints without tiles",
+                tiles.size(), tilesDrawn, tilesReused, overlayRooms, fullPaints );
+    }
+
+    @Override
+    public void renderVertex( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, Room v ) {
+        delegate.renderVertex( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderVertexLabel( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, Room v ) {
+        delegate.renderVertexLabel( renderContext, layout, v );
+    }
+
+    @Override
+    public void renderEdge( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, Exit e ) {
+        delegate.renderEdge( renderContext, layout, e );
+    }
+
+    @Override
+    public void renderEdgeLabel( RenderContext<Room, Exit> renderContext, Layout<Room, Exit> layout, Exit e ) {
+        delegate.renderEdgeLabel( renderContext, layout, e );
+    }
+
+    @Override
+    public void setVertexRenderer( Vertex<Room, Exit> r ) {
+        delegate.setVertexRenderer( r );
+    }
+
+    @Override
+    public void setEdgeRenderer( Edge<Room, Exit> r ) {
+        delegate.setEdgeRenderer( r );
+    }
+
+    @Override
+    public void setVertexLabelRenderer( VertexLabel<Room, Exit> r ) {
+        delegate.setVertexLabelRenderer( r );
+    }
+
+    @Override
+    public void setEdgeLabelRenderer( EdgeLabel<Room, Exit> r ) {
+        delegate.setEdgeLabelRenderer( r );
+    }
+
+    @Override
+    public Vertex<Room, Exit> getVertexRenderer() {
+        return delegate.getVertexRenderer();
+    }
+
+    @Override
+    public Edge<Room, Exit> getEdgeRenderer() {
+        return delegate.getEdgeRenderer();
+    }
+
+    @Override
+    public VertexLabel<Room, Exit> getVertexLabelRenderer() {
+        return delegate.getVertexLabelRenderer();
+    }
+
+    @Override
+    public EdgeLabel<Room, Exit> getEdgeLabelRenderer() {
+        return delegate.getEdgeLabelRenderer();
+    }
+
+}
@@ -4,9 +4,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.io.IOException;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -17,9 +14,9 @@ import javax.swing.JTextField;
 
 import com.glaurung.batMap.controller.SearchEngine;
 import com.glaurung.batMap.gui.MapperPanel;
-import com.glaurung.batMap.io.AreaDataPersister;
+import com.glaurung.batMap.io.AreaCatalog;
+import com.glaurung.batMap.io.SearchIndex;
 import com.glaurung.batMap.vo.Area;
-import com.glaurung.batMap.vo.AreaSaveObject;
 import com.glaurung.batMap.vo.Room;
 
 public class SearchPanel extends MapperPanel implements ItemListener {
@@ -35,6 +32,7 @@ public class SearchPanel extends MapperPanel implements ItemListener {
 
     private DefaultComboBoxModel listAllModel = new DefaultComboBoxModel();
     private JComboBox areaList = new JComboBox( listAllModel );
+    private int areaListGeneration = - 1;
 
     public SearchPanel( SearchEngine engine ) {
         super( engine );
@@ -90,55 +88,34 @@ public class SearchPanel extends MapperPanel implements ItemListener {
         if (text.equals( "" )) {
             return foundRooms;
         }
-        //iterate through all areafiles, iterate through all rooms and look for texts, if matches, add to list
-        List<String> areas = AreaDataPersister.listAreaNames( this.engine.getBaseDir() );
-        try {
-            for (String areaName : areas) {
-                AreaSaveObject aso = AreaDataPersister.loadData( this.engine.getBaseDir(), areaName );
-                Collection<Room> areaRooms = aso.getGraph().getVertices();
-                for (Room room : areaRooms) {
-                	if (room.getShortDesc() == null || room.getLongDesc() == null ) {
-                		// in case of bad room data, just skip it
-                		continue;
-                	}
-                	if (room.getLongDesc().toLowerCase().contains( text.toLowerCase() ) ||
-                            room.getShortDesc().toLowerCase().contains( text.toLowerCase() )) {
-                        model.addElement( new SearchResultItem( room ) );
-                        
-                        String roomString = room.getArea().getName() + ": " + room.getShortDesc();
-                        if (!foundRooms.contains(roomString)) {
-                            foundRooms.add(roomString);
-                        }
-                    }
-                }
+        for (Room room : SearchIndex.forBaseDir( this.engine.getBaseDir() ).search( text )) {
+            model.addElement( new SearchResultItem( room ) );
+
+            String roomString = room.getArea().getName() + ": " + room.getShortDesc();
+            if (!foundRooms.contains(roomString)) {
+                foundRooms.add(roomString);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
 
         return foundRooms;
     }
 
+    /**
+     * Fills the area list from the area catalog, only when the catalog has changed since last time.
+     */
     private void populateAreaList() {
+        AreaCatalog catalog = AreaCatalog.forBaseDir( this.engine.getBaseDir() );
+        List<AreaCatalog.Entry> entries = catalog.getEntries();
+        if (catalog.getGeneration() == areaListGeneration) {
+            return;
+        }
+        areaListGeneration = catalog.getGeneration();
         listAllModel.removeAllElements();
         listAllModel.addElement( new AreaListItem( new Room( "Area", "first slot placeholder", new Area( "Areas list" ) ) ) );
-        List<String> areas = AreaDataPersister.listAreaNames( this.engine.getBaseDir() );
-        Collections.sort( areas, String.CASE_INSENSITIVE_ORDER );
-        try {
-            for (String areaName : areas) {
-                AreaSaveObject aso = AreaDataPersister.loadData( this.engine.getBaseDir(), areaName );
-                Collection<Room> areaRooms = aso.getGraph().getVertices();
-                if (areaRooms.size() > 0) {
-                    listAllModel.addElement( new AreaListItem( areaRooms.iterator().next() ) );
-                }
-
+        for (AreaCatalog.Entry entry : entries) {
+            if (entry.getRoomCount() > 0) {
+                listAllModel.addElement( new AreaListItem( new Room( entry.getEntranceRoomId(), new Area( entry.getAreaName() ) ) ) );
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
 
     }
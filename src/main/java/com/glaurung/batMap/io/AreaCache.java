@@ -0,0 +1,199 @@
+package com.glaurung.batMap.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Keeps snapshots of recently used areas in memory, so walking back and forth over an area border doesn't
+ * read the area from disk every time. Areas are evicted least recently used first when the estimated size
+ * goes over the budget, 64 MB or what the batMap.areaCacheMb system property says.
+ * <p>
+ * An area gets in here when it is loaded and every time it is saved, before the save is written, so the
+ * cache always has the latest state. Nothing is only in the cache: a save waiting in {@link AreaSaver}
+ * holds its own snapshot, so evicting never loses changes.
+ * <p>
+ * Areas next to the current one can be prefetched on a background thread.
+ *
+ * @author lauri
+ */
+public class AreaCache implements Runnable {
+
+    private static final long DEFAULT_BUDGET_MB = 64;
+
+    private static final Map<String, AreaCache> CACHES = new HashMap<String, AreaCache>();
+
+    private final String basedir;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+    private final LinkedHashSet<String> toPrefetch = new LinkedHashSet<String>();
+    private Thread prefetcher;
+    private long budget = Long.getLong( "batMap.areaCacheMb", DEFAULT_BUDGET_MB ) * 1024 * 1024;
+    private long bytes = 0;
+    private long puts = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evicted = 0;
+    private long prefetched = 0;
+
+    public static synchronized AreaCache forBaseDir( String basedir ) {
+        AreaCache cache = CACHES.get( basedir );
+        if (cache == null) {
+            cache = new AreaCache( basedir );
+            CACHES.put( basedir, cache );
+        }
+        return cache;
+    }
+
+    private AreaCache( String basedir ) {
+        this.basedir = basedir;
+    }
+
+    /**
+     * @param areaName
+     * @return latest snapshot of the area, or null if it isn't cached
+     */
+    public synchronized AreaSnapshot get( String areaName ) {
+        Entry entry = entries.get( key( areaName ) );
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.snapshot;
+    }
+
+    /**
+     * Caches the snapshot as the latest state of its area.
+     *
+     * @param snapshot
+     */
+    public synchronized void put( AreaSnapshot snapshot ) {
+        String key = key( snapshot.getAreaName() );
+        Entry old = entries.remove( key );
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        Entry entry = new Entry( snapshot );
+        entries.put( key, entry );
+        bytes += entry.bytes;
+        puts++;
+        evict( key );
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized void setBudget( long bytes ) {
+        this.budget = bytes;
+        evict( null );
+    }
+
+    /**
+     * Loads the areas that aren't cached yet on the prefetch thread, dropping what is still waiting from
+     * an earlier call.
+     *
+     * @param areaNames
+     */
+    public synchronized void prefetch( Collection<String> areaNames ) {
+        toPrefetch.clear();
+        for (String areaName : areaNames) {
+            if (! entries.containsKey( key( areaName ) )) {
+                toPrefetch.add( areaName );
+            }
+        }
+        if (toPrefetch.isEmpty()) {
+            return;
+        }
+        if (prefetcher == null) {
+            prefetcher = new Thread( this, "batMap-prefetch" );
+            prefetcher.setDaemon( true );
+            prefetcher.setPriority( Thread.MIN_PRIORITY );
+            prefetcher.start();
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            String areaName;
+            long putsBefore;
+            synchronized (this) {
+                while (toPrefetch.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // daemon thread, keep serving until the vm exits
+                    }
+                }
+                Iterator<String> first = toPrefetch.iterator();
+                areaName = first.next();
+                first.remove();
+                if (entries.containsKey( key( areaName ) )) {
+                    continue;
+                }
+                putsBefore = puts;
+            }
+            File areaFile = AreaDataPersister.getAreaFile( basedir, areaName );
+            if (! areaFile.exists()) {
+                continue;
+            }
+            try {
+                AreaDataPersister.readArea( basedir, areaName );
+                AreaSnapshot snapshot = AreaJournal.forBaseDir( basedir ).getSaved( areaFile );
+                synchronized (this) {
+                    // a put meanwhile may have been a newer save of this area, which must not be replaced
+                    if (snapshot != null && puts == putsBefore) {
+                        put( snapshot );
+                        prefetched++;
+                    }
+                }
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void evict( String keep ) {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            if (entry.getKey().equals( keep )) {
+                continue;
+            }
+            bytes -= entry.getValue().bytes;
+            eldest.remove();
+            evicted++;
+        }
+    }
+
+    private String key( String areaName ) {
+        return AreaDataPersister.getAreaFile( basedir, areaName ).getPath();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format( "area cache: %d areas, %.1f / %d MB, %d hits, %d misses, %d evicted, %d prefetched",
+                entries.size(), bytes / 1048576.0, budget / 1048576, hits, misses, evicted, prefetched );
+    }
+
+
+    private static class Entry {
+        final AreaSnapshot snapshot;
+        final long bytes;
+
+        Entry( AreaSnapshot snapshot ) {
+            this.snapshot = snapshot;
+            this.bytes = snapshot.estimateBytes();
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.glaurung.batMap.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * Small persistent list of mapped areas, kept in conf/batMapCatalog.dat, so the area list can be shown
+ * without loading every map. Each entry remembers the area name, room count, file size, file timestamp
+ * and entrance room id. Entries are updated when an area is saved, and when a file on disk no longer
+ * matches its entry, which for v2 files only needs the file header.
+ *
+ * @author lauri
+ */
+public class AreaCatalog {
+
+    private static final String FILENAME = "batMapCatalog.dat";
+    private static final String DIRNAME = "conf";
+    private static final int MAGIC = 0x42434154; // "BCAT"
+    private static final int VERSION = 1;
+
+    private static final Map<String, AreaCatalog> CATALOGS = new HashMap<String, AreaCatalog>();
+
+    private final String basedir;
+    private final File file;
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>( String.CASE_INSENSITIVE_ORDER );
+    private boolean loaded = false;
+    private int generation = 0;
+
+    public static class Entry {
+        private final String fileKey;
+        private final String areaName;
+        private final int roomCount;
+        private final long fileSize;
+        private final long lastModified;
+        private final String entranceRoomId;
+
+        Entry( String fileKey, String areaName, int roomCount, long fileSize, long lastModified, String entranceRoomId ) {
+            this.fileKey = fileKey;
+            this.areaName = areaName;
+            this.roomCount = roomCount;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.entranceRoomId = entranceRoomId;
+        }
+
+        public String getFileKey() {
+            return fileKey;
+        }
+
+        public String getAreaName() {
+            return areaName;
+        }
+
+        public int getRoomCount() {
+            return roomCount;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getEntranceRoomId() {
+            return entranceRoomId;
+        }
+
+        boolean matches( File areaFile ) {
+            return areaFile.lastModified() == lastModified && areaFile.length() == fileSize;
+        }
+    }
+
+    public static synchronized AreaCatalog forBaseDir( String basedir ) {
+        AreaCatalog catalog = CATALOGS.get( basedir );
+        if (catalog == null) {
+            catalog = new AreaCatalog( basedir );
+            CATALOGS.put( basedir, catalog );
+        }
+        return catalog;
+    }
+
+    private AreaCatalog( String basedir ) {
+        this.basedir = basedir;
+        this.file = new File( new File( basedir, DIRNAME ), FILENAME );
+    }
+
+    /**
+     * Records an area that was just saved.
+     *
+     * @param fileKey area file name without suffix
+     * @param areaName
+     * @param areaFile
+     * @param rooms
+     */
+    public synchronized void update( String fileKey, String areaName, File areaFile, Collection<Room> rooms ) {
+        load();
+        entries.put( fileKey, new Entry( fileKey, areaName, rooms.size(), areaFile.length(), areaFile.lastModified(), entranceOf( rooms ) ) );
+        generation++;
+        write();
+    }
+
+    /**
+     * @return entries for every area file, sorted by name. Only files changed since they were cataloged are read.
+     */
+    public synchronized List<Entry> getEntries() {
+        load();
+        boolean changed = false;
+        Set<String> present = new HashSet<String>();
+        for (String fileKey : AreaDataPersister.listAreaNames( basedir )) {
+            present.add( fileKey );
+            File areaFile = AreaDataPersister.getAreaFile( basedir, fileKey );
+            Entry entry = entries.get( fileKey );
+            if (entry != null && entry.matches( areaFile )) {
+                continue;
+            }
+            entry = readEntry( fileKey, areaFile );
+            if (entry != null) {
+                entries.put( fileKey, entry );
+                changed = true;
+            }
+        }
+        if (entries.keySet().retainAll( present )) {
+            changed = true;
+        }
+        if (changed) {
+            generation++;
+            write();
+        }
+        return new ArrayList<Entry>( entries.values() );
+    }
+
+    /**
+     * @return number that changes whenever the catalog contents change
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    private Entry readEntry( String fileKey, File areaFile ) {
+        try {
+            BinaryAreaFormat.Header header = AreaDataPersister.loadHeader( basedir, fileKey );
+            if (header != null) {
+                return new Entry( fileKey, header.getAreaName(), header.getRoomCount(), areaFile.length(), areaFile.lastModified(), header.getEntranceRoomId() );
+            }
+            // old serialized file, needs loading once
+            AreaSaveObject saveObject = AreaDataPersister.readArea( basedir, fileKey );
+            Collection<Room> rooms = saveObject.getGraph().getVertices();
+            String areaName = rooms.isEmpty() ? fileKey : rooms.iterator().next().getArea().getName();
+            return new Entry( fileKey, areaName, rooms.size(), areaFile.length(), areaFile.lastModified(), entranceOf( rooms ) );
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println( e );
+            return null;
+        }
+    }
+
+    private static String entranceOf( Collection<Room> rooms ) {
+        String entrance = null;
+        for (Room room : rooms) {
+            if (room.isAreaEntrance()) {
+                entrance = room.getId();
+            }
+        }
+        if (entrance == null && ! rooms.isEmpty()) {
+            entrance = rooms.iterator().next().getId();
+        }
+        return entrance;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (! file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) )) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileKey = BinaryAreaFormat.readString( in );
+                String areaName = BinaryAreaFormat.readString( in );
+                int roomCount = in.readInt();
+                long fileSize = in.readLong();
+                long lastModified = in.readLong();
+                String entrance = BinaryAreaFormat.readString( in );
+                entries.put( fileKey, new Entry( fileKey, areaName, roomCount, fileSize, lastModified, entrance ) );
+            }
+        } catch (IOException e) {
+            System.out.println( e );
+            entries.clear();
+        }
+    }
+
+    private void write() {
+        File temp = new File( file.getPath() + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) )) {
+            out.writeInt( MAGIC );
+            out.writeShort( VERSION );
+            out.writeInt( entries.size() );
+            for (Entry entry : entries.values()) {
+                BinaryAreaFormat.writeString( out, entry.getFileKey() );
+                BinaryAreaFormat.writeString( out, entry.getAreaName() );
+                out.writeInt( entry.getRoomCount() );
+                out.writeLong( entry.getFileSize() );
+                out.writeLong( entry.getLastModified() );
+                BinaryAreaFormat.writeString( out, entry.getEntranceRoomId() );
+            }
+        } catch (IOException e) {
+            System.out.println( e );
+            temp.delete();
+            return;
+        }
+        if (! temp.renameTo( file )) {
+            file.delete();
+            temp.renameTo( file );
+        }
+    }
+
+}
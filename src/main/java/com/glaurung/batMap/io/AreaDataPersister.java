@@ -1,16 +1,17 @@
 package com.glaurung.batMap.io;
 
-import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -29,16 +30,89 @@ public class AreaDataPersister {
     private static final String NEW_PATH = "conf";
 
 
+    /**
+     * Saves the area through its journal, so only what changed since the last save is written, see
+     * {@link AreaJournal}. The catalog is updated whenever something was written, the search index and
+     * world graph only when something they use changed, or for the world graph also when a new transition
+     * has left its routes stale.
+     */
     public static void save( String basedir, SparseMultigraph<Room, Exit> graph, Layout<Room, Exit> layout ) throws IOException {
-        AreaSaveObject saveObject = makeSaveObject( basedir, graph, layout );
-        saveData( saveObject );
+        if (graph.getVertexCount() == 0) {
+            return;
+        }
+        save( basedir, AreaSnapshot.of( graph, layout ) );
+    }
 
+    public static void save( String basedir, AreaSnapshot snapshot ) throws IOException {
+        AreaCache.forBaseDir( basedir ).put( snapshot );
+        write( basedir, snapshot );
     }
 
+    /**
+     * Writes a snapshot, this is what {@link AreaSaver} runs off the mapper thread. The indexes get rooms
+     * rebuilt from the snapshot, so the live graph is never touched here.
+     */
+    static void write( String basedir, AreaSnapshot snapshot ) throws IOException {
+        File areaFile = new File( getFileNameFrom( basedir, snapshot.getAreaName() ) );
+        int changes = AreaJournal.forBaseDir( basedir ).save( areaFile, snapshot );
+        WorldGraph world = WorldGraph.forBaseDir( basedir );
+        boolean routesChanged = ( changes & AreaJournal.CHANGED_ROUTES ) != 0 || world.isStale( snapshot.getAreaName() );
+        if (changes == 0 && ! routesChanged) {
+            return;
+        }
+        SparseMultigraph<Room, Exit> graph = snapshot.toSaveObject().getGraph();
+        if (changes != 0) {
+            updateIndexes( basedir, areaFile, snapshot.getAreaName(), graph.getVertices(), changes );
+        }
+        if (routesChanged) {
+            world.updateArea( snapshot.getAreaName(), graph );
+        }
+    }
 
-    private static void saveData( AreaSaveObject saveObject ) throws IOException {
-	String baseName = saveObject.getFileName();
+    /**
+     * Works out again the world graph routes of areas that a new transition has left stale, from the
+     * cached snapshot or the area file. Leaving an unchanged area never saves it, so routing calls this
+     * instead of waiting for the next save. An area that has never been written is left for its first save.
+     */
+    public static void updateStaleRoutes( String basedir ) {
+        WorldGraph world = WorldGraph.forBaseDir( basedir );
+        for (String areaName : world.getStaleAreas()) {
+            AreaSaver.forBaseDir( basedir ).awaitSaved( areaName );
+            if (! world.isStale( areaName ) || ! getAreaFile( basedir, areaName ).exists()) {
+                continue;
+            }
+            try {
+                AreaSnapshot cached = AreaCache.forBaseDir( basedir ).get( areaName );
+                AreaSaveObject saveObject = cached != null ? cached.toSaveObject() : readArea( basedir, areaName );
+                world.updateArea( areaName, saveObject.getGraph() );
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.println( e );
+            }
+        }
+    }
+
+    static void updateIndexes( String basedir, File areaFile, String areaName, Collection<Room> rooms, int changes ) {
+        String fileKey = FilenameUtils.getBaseName( areaFile.getName() );
+        if (( changes & AreaJournal.CHANGED_DESCS ) != 0) {
+            SearchIndex.forBaseDir( basedir ).update( fileKey, areaName, areaFile.lastModified(), rooms );
+        }
+        AreaCatalog.forBaseDir( basedir ).update( fileKey, areaName, areaFile, rooms );
+    }
+
+
+    /**
+     * Writes the whole area into a temp file first, then rotates the old file into the backups and
+     * renames the new one in place.
+     */
+    static void saveData( AreaSaveObject saveObject, String areaName ) throws IOException {
 	File baseFile = new File( saveObject.getFileName() );
+	File temp = new File( saveObject.getFileName() + ".tmp" );
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temp);
+             DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream))) {
+            BinaryAreaFormat.write(saveObject, areaName, dataOutputStream);
+            dataOutputStream.flush();
+            fileOutputStream.getChannel().force(false);
+        }
 	File target = null;
 	long timestamp = Long.MAX_VALUE;
 	if (baseFile.exists()) {
@@ -53,23 +127,75 @@ public class AreaDataPersister {
 		}
 	    }
 	    System.out.println("Renaming " + baseFile + " to " + target);
+	    if (target.exists()) {
+		target.delete();
+	    }
 	    baseFile.renameTo(target);
 	}
-
-        try (FileOutputStream fileOutputStream = new FileOutputStream(new File(saveObject.getFileName()));
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream)) {
-            objectOutputStream.writeObject(saveObject);
-        }
+	if (!temp.renameTo(baseFile)) {
+	    throw new IOException("could not rename " + temp + " to " + baseFile);
+	}
     }
 
 
+    /**
+     * Loads the area from {@link AreaCache}, or from disk if it isn't cached, caching it then.
+     *
+     * @return new graph of the area, the caller is free to change it
+     */
     public static AreaSaveObject loadData( String basedir, String areaName ) throws IOException, ClassNotFoundException {
+        AreaCache cache = AreaCache.forBaseDir( basedir );
+        AreaSnapshot cached = cache.get( areaName );
+        if (cached != null) {
+            return cached.toSaveObject();
+        }
+        AreaSaveObject saveObject = readArea( basedir, areaName );
+        AreaSnapshot loaded = AreaJournal.forBaseDir( basedir ).getSaved( new File( getFileNameFrom( basedir, areaName ) ) );
+        if (loaded != null) {
+            cache.put( loaded );
+        }
+        return saveObject;
+    }
 
+    /**
+     * Reads the area from disk without touching the cache, waiting first for a background save of it
+     * that hasn't been written yet. Index rebuilds use this so they don't push the areas in use out of the
+     * cache.
+     */
+    static AreaSaveObject readArea( String basedir, String areaName ) throws IOException, ClassNotFoundException {
+        AreaSaver.forBaseDir( basedir ).awaitSaved( areaName );
         File dataFile = new File( getFileNameFrom( basedir, areaName ) );
 //		System.out.println("\n\n+ndataFileForLoading\n\n\n"+dataFile);
-        try (FileInputStream fileInputStream = new FileInputStream(dataFile);
-             ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream)) {
-            return (AreaSaveObject) objectInputStream.readObject();
+        return AreaJournal.forBaseDir( basedir ).load( dataFile );
+    }
+
+    /**
+     * Reads a v2 binary area, or a pre v2 file written with java serialization. Old files are converted
+     * to v2 the next time the area is saved.
+     */
+    static AreaSaveObject readData( BufferedInputStream input ) throws IOException, ClassNotFoundException {
+        input.mark(4);
+        DataInputStream dataInputStream = new DataInputStream(input);
+        if (dataInputStream.readInt() == BinaryAreaFormat.MAGIC) {
+            return BinaryAreaFormat.read(dataInputStream);
+        }
+        input.reset();
+        ObjectInputStream objectInputStream = new ObjectInputStream(input);
+        return (AreaSaveObject) objectInputStream.readObject();
+    }
+
+    /**
+     * Reads only what the v2 header tells about an area.
+     *
+     * @return header, or null if the file is in the old serialized format
+     */
+    public static BinaryAreaFormat.Header loadHeader( String basedir, String areaName ) throws IOException {
+        File dataFile = new File( getFileNameFrom( basedir, areaName ) );
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
+            if (dataInputStream.readInt() != BinaryAreaFormat.MAGIC) {
+                return null;
+            }
+            return BinaryAreaFormat.readHeader(dataInputStream);
         }
     }
 
@@ -90,17 +216,13 @@ public class AreaDataPersister {
         return names;
     }
 
-    private static AreaSaveObject makeSaveObject( String basedir, SparseMultigraph<Room, Exit> graph, Layout<Room, Exit> layout ) throws IOException {
-        AreaSaveObject saveObject = new AreaSaveObject();
-        saveObject.setGraph( graph );
-        Map<Room, Point2D> locations = saveObject.getLocations();
-        for (Room room : graph.getVertices()) {
-            Point2D coord = layout.transform( room );
-            locations.put( room, coord );
-        }
-        saveObject.setFileName( getFileNameFrom( basedir, graph.getVertices().iterator().next().getArea().getName() ) );
-//		System.out.println("\n\n+nsaveobjectdone\n\n\n"+saveObject.getFileName());
-        return saveObject;
+    /**
+     * @return file the area is saved in, without creating the directory if it doesn't exist
+     */
+    public static File getAreaFile( String basedir, String areaName ) {
+        File newDir = new File( basedir, NEW_PATH );
+        newDir = new File( newDir, PATH );
+        return new File( newDir, areaName.replaceAll( "'", "" ).replaceAll( "/", "" ) + SUFFIX );
     }
 
     private static String getFileNameFrom( String basedir, String areaName ) throws IOException {
@@ -0,0 +1,588 @@
+package com.glaurung.batMap.io;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections15.Transformer;
+import org.apache.commons.io.input.CountingInputStream;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Append only change log next to each area file, area.batmap.journal. A save compares the area to what
+ * was last saved and appends only the differences as one batch: rooms added or changed (descs, notes,
+ * label, color), rooms moved, rooms deleted, exits added and removed. Each batch ends in a commit record
+ * and is synced to disk, a batch cut short by a crash is ignored when reading and cut off the journal, so
+ * the batches saved after it are appended where it began.
+ * <p>
+ * Loading reads the base file and replays the journal over it. Once the journal grows to half the size of
+ * the base file, the area is compacted in the background: the base file is rewritten, the old one rotated
+ * into the .N.bk backups, and the journal removed. Replaying a journal is idempotent, so a crash between
+ * writing the base and removing the journal loses nothing.
+ * <p>
+ * Saves tell what kind of changes they wrote, so that the search index and world graph are only
+ * updated when something they use changed.
+ * <p>
+ * What was last saved is kept for the few most recently used areas only, an area not among them is
+ * written in full on its next save.
+ *
+ * @author lauri
+ */
+public class AreaJournal {
+
+    private static final String SUFFIX = ".journal";
+    private static final int MAGIC = 0x424A524E; // "BJRN"
+    private static final int VERSION = 1;
+    private static final int MAX_TRACKED_AREAS = 8;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+    /** Rooms added or removed, or short or long descs changed. */
+    public static final int CHANGED_DESCS = 1;
+    /** Rooms or exits added or removed, or labels or entrance changed. */
+    public static final int CHANGED_ROUTES = 1 << 1;
+    /** Anything else: locations, notes, colors, used exits. */
+    public static final int CHANGED_OTHER = 1 << 2;
+    public static final int CHANGED_ALL = CHANGED_DESCS | CHANGED_ROUTES | CHANGED_OTHER;
+
+    private static final byte ROOM = 1;
+    private static final byte MOVED = 2;
+    private static final byte ROOM_REMOVED = 3;
+    private static final byte EXIT = 4;
+    private static final byte EXIT_REMOVED = 5;
+    private static final byte COMMIT = 6;
+
+    private static final int ENTRANCE = 1;
+    private static final int INDOORS = 1 << 1;
+    private static final int COLORED = 1 << 2;
+
+    private static final Map<String, AreaJournal> JOURNALS = new HashMap<String, AreaJournal>();
+    private static ExecutorService compactor;
+
+    private final String basedir;
+    private final Map<String, AreaState> areas = new HashMap<String, AreaState>();
+    private final LinkedHashMap<String, AreaState> tracked = new LinkedHashMap<String, AreaState>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, AreaState> eldest ) {
+            if (size() > MAX_TRACKED_AREAS) {
+                eldest.getValue().saved = null;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong journalBytes = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong fullWrites = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    public static synchronized AreaJournal forBaseDir( String basedir ) {
+        AreaJournal journal = JOURNALS.get( basedir );
+        if (journal == null) {
+            journal = new AreaJournal( basedir );
+            JOURNALS.put( basedir, journal );
+        }
+        return journal;
+    }
+
+    private AreaJournal( String basedir ) {
+        this.basedir = basedir;
+    }
+
+    public static File getJournalFile( File areaFile ) {
+        return new File( areaFile.getPath() + SUFFIX );
+    }
+
+    /**
+     * Reads the base file and replays the journal over it, and remembers the result as what is saved.
+     *
+     * @param areaFile
+     * @return area as it was last saved
+     */
+    AreaSaveObject load( File areaFile ) throws IOException, ClassNotFoundException {
+        AreaState state = state( areaFile );
+        synchronized (state) {
+            AreaSaveObject saveObject;
+            try (FileInputStream fileInputStream = new FileInputStream( areaFile )) {
+                saveObject = AreaDataPersister.readData( new BufferedInputStream( fileInputStream ) );
+            }
+            String areaName = saveObject.getGraph().getVertexCount() > 0
+                    ? saveObject.getGraph().getVertices().iterator().next().getArea().getName() : null;
+            File journalFile = getJournalFile( areaFile );
+            if (journalFile.exists()) {
+                areaName = replay( journalFile, saveObject, areaName );
+            }
+            if (areaName != null) {
+                final Map<Room, Point2D> locations = saveObject.getLocations();
+                state.saved = AreaSnapshot.of( areaName, saveObject.getGraph(), new Transformer<Room, Point2D>() {
+                    @Override
+                    public Point2D transform( Room room ) {
+                        return locations.get( room );
+                    }
+                } );
+            }
+            return saveObject;
+        }
+    }
+
+    /**
+     * @param areaFile
+     * @return what was last loaded or saved of the area, null if not known
+     */
+    AreaSnapshot getSaved( File areaFile ) {
+        return state( areaFile ).saved;
+    }
+
+    /**
+     * Saves the area, appending the changes to the journal, or writing the whole file when there is no
+     * base file yet or the last saved state is not known.
+     *
+     * @param areaFile
+     * @param snapshot
+     * @return CHANGED_ flags telling what was written, 0 if nothing had changed since the last save
+     */
+    int save( File areaFile, AreaSnapshot snapshot ) throws IOException {
+        AreaState state = state( areaFile );
+        synchronized (state) {
+            AreaSnapshot saved = state.saved;
+            if (saved == null || ! areaFile.exists()) {
+                writeFull( areaFile, snapshot, state );
+                fullWrites.incrementAndGet();
+                return CHANGED_ALL;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream( bytes );
+            int changes = writeChanges( saved, snapshot, out );
+            if (changes == 0) {
+                unchanged.incrementAndGet();
+                return 0;
+            }
+            out.writeByte( COMMIT );
+            out.flush();
+            File journalFile = getJournalFile( areaFile );
+            append( journalFile, snapshot.getAreaName(), bytes );
+            state.saved = snapshot;
+            batches.incrementAndGet();
+            journalBytes.addAndGet( bytes.size() );
+            long length = journalFile.length();
+            if (length >= COMPACT_MIN_BYTES && length * 2 >= areaFile.length() && ! state.compacting) {
+                state.compacting = true;
+                compactLater( areaFile, state );
+            }
+            return changes;
+        }
+    }
+
+    private AreaState state( File areaFile ) {
+        String key = areaFile.getPath();
+        synchronized (this) {
+            AreaState state = areas.get( key );
+            if (state == null) {
+                state = new AreaState();
+                areas.put( key, state );
+            }
+            tracked.put( key, state );
+            return state;
+        }
+    }
+
+    private void writeFull( File areaFile, AreaSnapshot snapshot, AreaState state ) throws IOException {
+        AreaSaveObject saveObject = snapshot.toSaveObject();
+        saveObject.setFileName( areaFile.getPath() );
+        AreaDataPersister.saveData( saveObject, snapshot.getAreaName() );
+        File journalFile = getJournalFile( areaFile );
+        if (journalFile.exists() && ! journalFile.delete()) {
+            throw new IOException( "could not remove " + journalFile );
+        }
+        state.saved = snapshot;
+    }
+
+    private void compactLater( final File areaFile, final AreaState state ) {
+        compactor().execute( new Runnable() {
+            @Override
+            public void run() {
+                AreaSnapshot compacted = null;
+                try {
+                    synchronized (state) {
+                        state.compacting = false;
+                        if (state.saved != null && getJournalFile( areaFile ).exists()) {
+                            compacted = state.saved;
+                            writeFull( areaFile, compacted, state );
+                            compactions.incrementAndGet();
+                        }
+                    }
+                    if (compacted != null) {
+                        AreaDataPersister.updateIndexes( basedir, areaFile, compacted.getAreaName(), compacted.toRooms(), CHANGED_ALL );
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } );
+    }
+
+    private static synchronized ExecutorService compactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "batMap-compactor" );
+                    thread.setDaemon( true );
+                    thread.setPriority( Thread.MIN_PRIORITY );
+                    return thread;
+                }
+            } );
+        }
+        return compactor;
+    }
+
+    /**
+     * Writes what changed from saved to current, removals first so that replaying in order ends up with
+     * current.
+     *
+     * @return CHANGED_ flags, 0 if nothing was written
+     */
+    private static int writeChanges( AreaSnapshot saved, AreaSnapshot current, DataOutputStream out ) throws IOException {
+        int changes = 0;
+        for (AreaSnapshot.ExitState exit : saved.getExits()) {
+            if (! current.getExits().contains( exit )) {
+                out.writeByte( EXIT_REMOVED );
+                writeExit( out, exit );
+                changes |= CHANGED_ROUTES;
+            }
+        }
+        for (String id : saved.getRooms().keySet()) {
+            if (! current.getRooms().containsKey( id )) {
+                out.writeByte( ROOM_REMOVED );
+                BinaryAreaFormat.writeString( out, id );
+                changes |= CHANGED_DESCS | CHANGED_ROUTES;
+            }
+        }
+        for (AreaSnapshot.RoomState room : current.getRooms().values()) {
+            AreaSnapshot.RoomState old = saved.getRooms().get( room.id );
+            if (old == null) {
+                out.writeByte( ROOM );
+                writeRoom( out, room );
+                changes |= CHANGED_DESCS | CHANGED_ROUTES;
+            } else if (! old.sameValues( room )) {
+                out.writeByte( ROOM );
+                writeRoom( out, room );
+                changes |= old.changesFrom( room );
+            } else if (! old.sameLocation( room )) {
+                out.writeByte( MOVED );
+                BinaryAreaFormat.writeString( out, room.id );
+                out.writeDouble( room.x );
+                out.writeDouble( room.y );
+                changes |= CHANGED_OTHER;
+            }
+        }
+        for (AreaSnapshot.ExitState exit : current.getExits()) {
+            if (! saved.getExits().contains( exit )) {
+                out.writeByte( EXIT );
+                writeExit( out, exit );
+                changes |= CHANGED_ROUTES;
+            }
+        }
+        return changes;
+    }
+
+    private static void append( File journalFile, String areaName, ByteArrayOutputStream batch ) throws IOException {
+        boolean created = ! journalFile.exists() || journalFile.length() == 0;
+        try (FileOutputStream out = new FileOutputStream( journalFile, true )) {
+            if (created) {
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                DataOutputStream headerOut = new DataOutputStream( header );
+                headerOut.writeInt( MAGIC );
+                headerOut.writeShort( VERSION );
+                BinaryAreaFormat.writeString( headerOut, areaName );
+                headerOut.flush();
+                header.writeTo( out );
+            }
+            batch.writeTo( out );
+            out.getChannel().force( false );
+        }
+    }
+
+    /**
+     * Applies every complete batch of the journal to the area, and cuts off whatever follows the last
+     * commit. Otherwise the next save would append after a torn batch, where replay never gets to.
+     *
+     * @return area name from the journal
+     */
+    private static String replay( File journalFile, AreaSaveObject saveObject, String areaName ) throws IOException {
+        long committed;
+        CountingInputStream counter = new CountingInputStream( new BufferedInputStream( new FileInputStream( journalFile ) ) );
+        try (DataInputStream in = new DataInputStream( counter )) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException( "not an area journal: " + journalFile );
+            }
+            int version = in.readUnsignedShort();
+            if (version > VERSION) {
+                throw new IOException( "unsupported journal version " + version + ": " + journalFile );
+            }
+            String journalAreaName = BinaryAreaFormat.readString( in );
+            if (areaName == null) {
+                areaName = journalAreaName;
+            }
+            committed = counter.getByteCount();
+            Replay replay = new Replay( saveObject, areaName );
+            List<Record> batch = new ArrayList<Record>();
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    Record record = new Record( type );
+                    switch (type) {
+                        case ROOM:
+                            record.room = readRoom( in );
+                            break;
+                        case MOVED:
+                            record.id = BinaryAreaFormat.readString( in );
+                            record.x = in.readDouble();
+                            record.y = in.readDouble();
+                            break;
+                        case ROOM_REMOVED:
+                            record.id = BinaryAreaFormat.readString( in );
+                            break;
+                        case EXIT:
+                        case EXIT_REMOVED:
+                            record.exit = readExit( in );
+                            break;
+                        case COMMIT:
+                            replay.apply( batch );
+                            batch.clear();
+                            committed = counter.getByteCount();
+                            continue;
+                        default:
+                            throw new IOException( "bad journal record " + type );
+                    }
+                    batch.add( record );
+                }
+            } catch (EOFException e) {
+                // end of journal, or a batch that never got its commit
+            } catch (IOException e) {
+                System.out.println( "ignoring rest of " + journalFile + ": " + e.getMessage() );
+            }
+        }
+        if (committed < journalFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile( journalFile, "rw" )) {
+                file.setLength( committed );
+                file.getChannel().force( false );
+            }
+        }
+        return areaName;
+    }
+
+    private static void writeRoom( DataOutputStream out, AreaSnapshot.RoomState room ) throws IOException {
+        BinaryAreaFormat.writeString( out, room.id );
+        BinaryAreaFormat.writeString( out, room.shortDesc );
+        BinaryAreaFormat.writeString( out, room.longDesc );
+        BinaryAreaFormat.writeString( out, room.notes );
+        BinaryAreaFormat.writeString( out, room.label );
+        int flags = 0;
+        if (room.entrance) {
+            flags |= ENTRANCE;
+        }
+        if (room.indoors) {
+            flags |= INDOORS;
+        }
+        if (room.color != null) {
+            flags |= COLORED;
+        }
+        out.writeByte( flags );
+        if (room.color != null) {
+            out.writeInt( room.color );
+        }
+        out.writeDouble( room.x );
+        out.writeDouble( room.y );
+        writeStrings( out, room.exits );
+        writeStrings( out, room.usedExits );
+    }
+
+    private static AreaSnapshot.RoomState readRoom( DataInputStream in ) throws IOException {
+        String id = BinaryAreaFormat.readString( in );
+        String shortDesc = BinaryAreaFormat.readString( in );
+        String longDesc = BinaryAreaFormat.readString( in );
+        String notes = BinaryAreaFormat.readString( in );
+        String label = BinaryAreaFormat.readString( in );
+        int flags = in.readByte();
+        Integer color = ( flags & COLORED ) != 0 ? in.readInt() : null;
+        double x = in.readDouble();
+        double y = in.readDouble();
+        Set<String> exits = readStrings( in );
+        Set<String> usedExits = readStrings( in );
+        return new AreaSnapshot.RoomState( id, shortDesc, longDesc, notes, label, ( flags & ENTRANCE ) != 0,
+                ( flags & INDOORS ) != 0, color, x, y, exits, usedExits );
+    }
+
+    private static void writeExit( DataOutputStream out, AreaSnapshot.ExitState exit ) throws IOException {
+        BinaryAreaFormat.writeString( out, exit.from );
+        BinaryAreaFormat.writeString( out, exit.to );
+        BinaryAreaFormat.writeString( out, exit.name );
+        out.writeBoolean( exit.directed );
+    }
+
+    private static AreaSnapshot.ExitState readExit( DataInputStream in ) throws IOException {
+        String from = BinaryAreaFormat.readString( in );
+        String to = BinaryAreaFormat.readString( in );
+        String name = BinaryAreaFormat.readString( in );
+        return new AreaSnapshot.ExitState( from, to, name, in.readBoolean() );
+    }
+
+    private static void writeStrings( DataOutputStream out, Collection<String> strings ) throws IOException {
+        out.writeInt( strings.size() );
+        for (String string : strings) {
+            BinaryAreaFormat.writeString( out, string );
+        }
+    }
+
+    private static Set<String> readStrings( DataInputStream in ) throws IOException {
+        int count = in.readInt();
+        Set<String> strings = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            strings.add( BinaryAreaFormat.readString( in ) );
+        }
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "saves: %d journal batches (%d kB), %d unchanged skipped, %d full writes, %d compactions",
+                batches.get(), journalBytes.get() / 1024, unchanged.get(), fullWrites.get(), compactions.get() );
+    }
+
+
+    private static class AreaState {
+        volatile AreaSnapshot saved;
+        boolean compacting = false;
+    }
+
+
+    private static class Record {
+        final byte type;
+        AreaSnapshot.RoomState room;
+        AreaSnapshot.ExitState exit;
+        String id;
+        double x;
+        double y;
+
+        Record( byte type ) {
+            this.type = type;
+        }
+    }
+
+
+    /**
+     * Applies journal records to a loaded area.
+     */
+    private static class Replay {
+        final SparseMultigraph<Room, Exit> graph;
+        final Map<Room, Point2D> locations;
+        final Map<String, Room> rooms = new HashMap<String, Room>();
+        final Area area;
+
+        Replay( AreaSaveObject saveObject, String areaName ) {
+            this.graph = saveObject.getGraph();
+            this.locations = saveObject.getLocations();
+            Area existing = null;
+            for (Room room : graph.getVertices()) {
+                rooms.put( room.getId(), room );
+                existing = room.getArea();
+            }
+            this.area = existing != null ? existing : new Area( areaName );
+        }
+
+        void apply( List<Record> batch ) {
+            for (Record record : batch) {
+                switch (record.type) {
+                    case ROOM: {
+                        AreaSnapshot.RoomState state = record.room;
+                        Room room = rooms.get( state.id );
+                        if (room == null) {
+                            room = state.toRoom( area );
+                            graph.addVertex( room );
+                            rooms.put( state.id, room );
+                        } else {
+                            state.apply( room );
+                        }
+                        locations.put( room, new Point2D.Double( state.x, state.y ) );
+                        break;
+                    }
+                    case MOVED: {
+                        Room room = rooms.get( record.id );
+                        if (room != null) {
+                            locations.put( room, new Point2D.Double( record.x, record.y ) );
+                        }
+                        break;
+                    }
+                    case ROOM_REMOVED: {
+                        Room room = rooms.remove( record.id );
+                        if (room != null) {
+                            graph.removeVertex( room );
+                            locations.remove( room );
+                        }
+                        break;
+                    }
+                    case EXIT: {
+                        AreaSnapshot.ExitState exit = record.exit;
+                        Room from = rooms.get( exit.from );
+                        Room to = rooms.get( exit.to );
+                        if (from != null && to != null && find( from, to, exit.name ) == null) {
+                            graph.addEdge( new Exit( exit.name ), new Pair<Room>( from, to ),
+                                    exit.directed ? EdgeType.DIRECTED : EdgeType.UNDIRECTED );
+                        }
+                        break;
+                    }
+                    case EXIT_REMOVED: {
+                        AreaSnapshot.ExitState exit = record.exit;
+                        Room from = rooms.get( exit.from );
+                        Room to = rooms.get( exit.to );
+                        Exit existing = from != null && to != null ? find( from, to, exit.name ) : null;
+                        if (existing != null) {
+                            graph.removeEdge( existing );
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        private Exit find( Room from, Room to, String name ) {
+            for (Exit exit : graph.getOutEdges( from )) {
+                if (exit.getExit().equals( name ) && graph.getOpposite( from, exit ).equals( to )) {
+                    return exit;
+                }
+            }
+            return null;
+        }
+    }
+
+}
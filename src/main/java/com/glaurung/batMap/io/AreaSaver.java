@@ -0,0 +1,162 @@
+package com.glaurung.batMap.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes area snapshots on a background thread, so leaving an area only costs taking the snapshot. A
+ * snapshot of an area that is still waiting replaces the older one, only the latest gets written.
+ * Loading an area waits for its pending save first, see {@link #awaitSaved(String)}, and
+ * {@link #flush()} waits for everything, which the plugin does on exit.
+ *
+ * @author lauri
+ */
+public class AreaSaver implements Runnable {
+
+    private static final Map<String, AreaSaver> SAVERS = new HashMap<String, AreaSaver>();
+
+    private final String basedir;
+    private final LinkedHashMap<String, AreaSnapshot> pending = new LinkedHashMap<String, AreaSnapshot>();
+    private String writing = null;
+    private Thread worker;
+
+    private long queued = 0;
+    private long coalesced = 0;
+    private long unchanged = 0;
+    private long written = 0;
+    private long failed = 0;
+    private double lastWriteMillis = 0;
+    private double maxWriteMillis = 0;
+
+    public static synchronized AreaSaver forBaseDir( String basedir ) {
+        AreaSaver saver = SAVERS.get( basedir );
+        if (saver == null) {
+            saver = new AreaSaver( basedir );
+            SAVERS.put( basedir, saver );
+        }
+        return saver;
+    }
+
+    private AreaSaver( String basedir ) {
+        this.basedir = basedir;
+    }
+
+    /**
+     * Queues the snapshot for writing, replacing a queued snapshot of the same area. The snapshot goes
+     * into {@link AreaCache} right away, so loading the area again doesn't have to wait for the write.
+     *
+     * @param snapshot
+     */
+    public synchronized void save( AreaSnapshot snapshot ) {
+        AreaCache.forBaseDir( basedir ).put( snapshot );
+        String key = key( snapshot.getAreaName() );
+        if (pending.remove( key ) != null) {
+            coalesced++;
+        }
+        pending.put( key, snapshot );
+        queued++;
+        if (worker == null) {
+            worker = new Thread( this, "batMap-saver" );
+            worker.setDaemon( true );
+            worker.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Counts a save that was skipped because the area hadn't changed.
+     */
+    public synchronized void skippedUnchanged() {
+        unchanged++;
+    }
+
+    /**
+     * Blocks until a queued or running save of the area is on disk.
+     *
+     * @param areaName
+     */
+    public synchronized void awaitSaved( String areaName ) {
+        if (Thread.currentThread() == worker) {
+            return;
+        }
+        String key = key( areaName );
+        try {
+            while (pending.containsKey( key ) || key.equals( writing )) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Blocks until every queued save is on disk.
+     */
+    public synchronized void flush() {
+        if (Thread.currentThread() == worker) {
+            return;
+        }
+        try {
+            while (! pending.isEmpty() || writing != null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            AreaSnapshot snapshot;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // daemon thread, keep serving until the vm exits
+                    }
+                }
+                Iterator<Map.Entry<String, AreaSnapshot>> first = pending.entrySet().iterator();
+                Map.Entry<String, AreaSnapshot> entry = first.next();
+                first.remove();
+                writing = entry.getKey();
+                snapshot = entry.getValue();
+            }
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                AreaDataPersister.write( basedir, snapshot );
+                ok = true;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            double millis = ( System.nanoTime() - start ) / 1000000.0;
+            synchronized (this) {
+                writing = null;
+                if (ok) {
+                    written++;
+                } else {
+                    failed++;
+                }
+                lastWriteMillis = millis;
+                maxWriteMillis = Math.max( maxWriteMillis, millis );
+                notifyAll();
+            }
+        }
+    }
+
+    private String key( String areaName ) {
+        return AreaDataPersister.getAreaFile( basedir, areaName ).getPath();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format( "saver: %d saves queued, %d skipped unchanged, %d coalesced, %d written, %d failed, %d pending, write last %.1f ms, max %.1f ms",
+                queued, unchanged, coalesced, written, failed, pending.size() + ( writing != null ? 1 : 0 ), lastWriteMillis, maxWriteMillis );
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.glaurung.batMap.io;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections15.Transformer;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Immutable copy of what gets saved of an area: room values, locations and exits. Taking one only copies
+ * references and the small exit sets, so it is cheap to do on the mapper thread and the copy can then be
+ * written or compared anywhere without holding the graph lock.
+ *
+ * @author lauri
+ */
+public class AreaSnapshot {
+
+    private final String areaName;
+    private final Map<String, RoomState> rooms;
+    private final Set<ExitState> exits;
+
+    AreaSnapshot( String areaName, Map<String, RoomState> rooms, Set<ExitState> exits ) {
+        this.areaName = areaName;
+        this.rooms = Collections.unmodifiableMap( rooms );
+        this.exits = Collections.unmodifiableSet( exits );
+    }
+
+    /**
+     * @param graph  must not be empty, the area name comes from its rooms
+     * @param layout
+     */
+    public static AreaSnapshot of( SparseMultigraph<Room, Exit> graph, Layout<Room, Exit> layout ) {
+        return of( graph.getVertices().iterator().next().getArea().getName(), graph, layout );
+    }
+
+    /**
+     * @param areaName
+     * @param graph
+     * @param locations layout or anything else giving room locations
+     */
+    public static AreaSnapshot of( String areaName, SparseMultigraph<Room, Exit> graph, Transformer<Room, Point2D> locations ) {
+        Map<String, RoomState> rooms = new LinkedHashMap<String, RoomState>();
+        for (Room room : graph.getVertices()) {
+            rooms.put( room.getId(), new RoomState( room, locations.transform( room ) ) );
+        }
+        Set<ExitState> exits = new HashSet<ExitState>();
+        for (Exit exit : graph.getEdges()) {
+            Pair<Room> ends = graph.getEndpoints( exit );
+            exits.add( new ExitState( ends.getFirst().getId(), ends.getSecond().getId(), exit.getExit(),
+                    graph.getEdgeType( exit ) == EdgeType.DIRECTED ) );
+        }
+        return new AreaSnapshot( areaName, rooms, exits );
+    }
+
+    public String getAreaName() {
+        return areaName;
+    }
+
+    public Map<String, RoomState> getRooms() {
+        return rooms;
+    }
+
+    public Set<ExitState> getExits() {
+        return exits;
+    }
+
+    /**
+     * @return new rooms and graph holding the snapshot values
+     */
+    public AreaSaveObject toSaveObject() {
+        AreaSaveObject saveObject = new AreaSaveObject();
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Area area = new Area( areaName );
+        Map<String, Room> byId = new HashMap<String, Room>();
+        for (RoomState state : rooms.values()) {
+            Room room = state.toRoom( area );
+            graph.addVertex( room );
+            saveObject.getLocations().put( room, new Point2D.Double( state.x, state.y ) );
+            byId.put( state.id, room );
+        }
+        for (ExitState exit : exits) {
+            graph.addEdge( new Exit( exit.name ), new Pair<Room>( byId.get( exit.from ), byId.get( exit.to ) ),
+                    exit.directed ? EdgeType.DIRECTED : EdgeType.UNDIRECTED );
+        }
+        return saveObject;
+    }
+
+    public Collection<Room> toRooms() {
+        Area area = new Area( areaName );
+        List<Room> result = new ArrayList<Room>( rooms.size() );
+        for (RoomState state : rooms.values()) {
+            result.add( state.toRoom( area ) );
+        }
+        return result;
+    }
+
+    /**
+     * @return rough guess of the heap the snapshot takes, for budgeting caches
+     */
+    public long estimateBytes() {
+        long bytes = 64;
+        for (RoomState room : rooms.values()) {
+            bytes += 160 + 2 * ( length( room.id ) + length( room.shortDesc ) + length( room.longDesc ) + length( room.notes )
+                    + length( room.label ) ) + 48 * ( room.exits.size() + room.usedExits.size() );
+        }
+        return bytes + 64L * exits.size();
+    }
+
+    private static int length( String value ) {
+        return value == null ? 0 : value.length();
+    }
+
+
+    /**
+     * Saved values of one room. Current and picked are view state and not part of it.
+     */
+    public static class RoomState {
+        final String id;
+        final String shortDesc;
+        final String longDesc;
+        final String notes;
+        final String label;
+        final boolean entrance;
+        final boolean indoors;
+        final Integer color;
+        final double x;
+        final double y;
+        final Set<String> exits;
+        final Set<String> usedExits;
+
+        RoomState( Room room, Point2D location ) {
+            this( room.getId(), room.getShortDesc(), room.getLongDesc(), room.getNotes(), room.getLabel(),
+                    room.isAreaEntrance(), room.isIndoors(), room.getColor() == null ? null : room.getColor().getRGB(),
+                    location == null ? 0 : location.getX(), location == null ? 0 : location.getY(),
+                    new HashSet<String>( room.getExits() ), new HashSet<String>( room.getUsedExits() ) );
+        }
+
+        RoomState( String id, String shortDesc, String longDesc, String notes, String label, boolean entrance,
+                   boolean indoors, Integer color, double x, double y, Set<String> exits, Set<String> usedExits ) {
+            this.id = id;
+            this.shortDesc = shortDesc;
+            this.longDesc = longDesc;
+            this.notes = notes;
+            this.label = label;
+            this.entrance = entrance;
+            this.indoors = indoors;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.exits = exits;
+            this.usedExits = usedExits;
+        }
+
+        /**
+         * @return true if everything but the location is the same
+         */
+        boolean sameValues( RoomState other ) {
+            return changesFrom( other ) == 0;
+        }
+
+        /**
+         * @return AreaJournal.CHANGED_ flags for what differs from other, location not included
+         */
+        int changesFrom( RoomState other ) {
+            int changes = 0;
+            if (! same( shortDesc, other.shortDesc ) || ! same( longDesc, other.longDesc )) {
+                changes |= AreaJournal.CHANGED_DESCS;
+            }
+            if (entrance != other.entrance || ! same( label, other.label ) || ! exits.equals( other.exits )) {
+                changes |= AreaJournal.CHANGED_ROUTES;
+            }
+            if (indoors != other.indoors || ! same( notes, other.notes ) || ! same( color, other.color )
+                    || ! usedExits.equals( other.usedExits )) {
+                changes |= AreaJournal.CHANGED_OTHER;
+            }
+            return changes;
+        }
+
+        boolean sameLocation( RoomState other ) {
+            return x == other.x && y == other.y;
+        }
+
+        Room toRoom( Area area ) {
+            Room room = new Room( id, area );
+            apply( room );
+            return room;
+        }
+
+        void apply( Room room ) {
+            room.setShortDesc( shortDesc );
+            room.setLongDesc( longDesc );
+            room.setNotes( notes );
+            room.setLabel( label );
+            room.setAreaEntrance( entrance );
+            room.setIndoors( indoors );
+            room.setColor( color == null ? null : new Color( color, true ) );
+            room.setExits( new HashSet<String>( exits ) );
+            room.resetExitUsage();
+            for (String used : usedExits) {
+                room.useExit( used );
+            }
+        }
+
+        private static boolean same( Object a, Object b ) {
+            return a == null ? b == null : a.equals( b );
+        }
+    }
+
+
+    public static class ExitState {
+        final String from;
+        final String to;
+        final String name;
+        final boolean directed;
+
+        ExitState( String from, String to, String name, boolean directed ) {
+            this.from = from;
+            this.to = to;
+            this.name = name;
+            this.directed = directed;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if (! ( o instanceof ExitState )) {
+                return false;
+            }
+            ExitState other = (ExitState) o;
+            return directed == other.directed && from.equals( other.from ) && to.equals( other.to ) && name.equals( other.name );
+        }
+
+        @Override
+        public int hashCode() {
+            return ( from.hashCode() * 31 + to.hashCode() ) * 31 + name.hashCode();
+        }
+    }
+
+}
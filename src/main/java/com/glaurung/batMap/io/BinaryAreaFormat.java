@@ -0,0 +1,291 @@
+package com.glaurung.batMap.io;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Version 2 of the .batmap file, replacing plain java serialization of AreaSaveObject.
+ * <pre>
+ * header:       magic "BMAP", version, area name, room count, exit count, entrance room id
+ * string table: count, then every distinct string once as length prefixed utf-8
+ * rooms:        string refs for id/descs/notes/label, flags, color, x, y, exit name refs, used exit refs
+ * exits:        from room, to room, exit name ref, directed flag
+ * </pre>
+ * String refs are indexes into the string table, -1 meaning null. The header alone is enough to
+ * tell what area a file holds and how big it is, see {@link #readHeader(DataInputStream)}.
+ *
+ * @author lauri
+ */
+public class BinaryAreaFormat {
+
+    public static final int MAGIC = 0x424D4150; // "BMAP"
+    public static final int VERSION = 2;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+    private static final int NULL_REF = - 1;
+
+    private static final int ENTRANCE = 1;
+    private static final int INDOORS = 1 << 1;
+    private static final int COLORED = 1 << 2;
+
+    /**
+     * What the header of a v2 file tells without reading the rooms.
+     */
+    public static class Header {
+        private final int version;
+        private final String areaName;
+        private final int roomCount;
+        private final int exitCount;
+        private final String entranceRoomId;
+
+        Header( int version, String areaName, int roomCount, int exitCount, String entranceRoomId ) {
+            this.version = version;
+            this.areaName = areaName;
+            this.roomCount = roomCount;
+            this.exitCount = exitCount;
+            this.entranceRoomId = entranceRoomId;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getAreaName() {
+            return areaName;
+        }
+
+        public int getRoomCount() {
+            return roomCount;
+        }
+
+        public int getExitCount() {
+            return exitCount;
+        }
+
+        public String getEntranceRoomId() {
+            return entranceRoomId;
+        }
+    }
+
+    public static void write( AreaSaveObject saveObject, String areaName, DataOutputStream out ) throws IOException {
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Collection<Room> rooms = graph.getVertices();
+        Collection<Exit> exits = graph.getEdges();
+
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        Map<Room, Integer> roomRefs = new HashMap<Room, Integer>();
+        String entranceId = null;
+        for (Room room : rooms) {
+            roomRefs.put( room, roomRefs.size() );
+            ref( strings, room.getId() );
+            ref( strings, room.getShortDesc() );
+            ref( strings, room.getLongDesc() );
+            ref( strings, room.getNotes() );
+            ref( strings, room.getLabel() );
+            for (String exit : room.getExits()) {
+                ref( strings, exit );
+            }
+            for (String exit : room.getUsedExits()) {
+                ref( strings, exit );
+            }
+            if (room.isAreaEntrance()) {
+                entranceId = room.getId();
+            }
+        }
+        for (Exit exit : exits) {
+            ref( strings, exit.getExit() );
+        }
+
+        out.writeInt( MAGIC );
+        out.writeShort( VERSION );
+        writeString( out, areaName );
+        out.writeInt( rooms.size() );
+        out.writeInt( exits.size() );
+        writeString( out, entranceId );
+
+        out.writeInt( strings.size() );
+        for (String string : strings.keySet()) {
+            writeString( out, string );
+        }
+
+        for (Room room : rooms) {
+            out.writeInt( ref( strings, room.getId() ) );
+            out.writeInt( ref( strings, room.getShortDesc() ) );
+            out.writeInt( ref( strings, room.getLongDesc() ) );
+            out.writeInt( ref( strings, room.getNotes() ) );
+            out.writeInt( ref( strings, room.getLabel() ) );
+            int flags = 0;
+            if (room.isAreaEntrance()) {
+                flags |= ENTRANCE;
+            }
+            if (room.isIndoors()) {
+                flags |= INDOORS;
+            }
+            if (room.getColor() != null) {
+                flags |= COLORED;
+            }
+            out.writeByte( flags );
+            if (room.getColor() != null) {
+                out.writeInt( room.getColor().getRGB() );
+            }
+            Point2D location = saveObject.getLocations().get( room );
+            out.writeDouble( location == null ? 0 : location.getX() );
+            out.writeDouble( location == null ? 0 : location.getY() );
+            writeRefs( out, strings, room.getExits() );
+            writeRefs( out, strings, room.getUsedExits() );
+        }
+
+        for (Exit exit : exits) {
+            Pair<Room> ends = graph.getEndpoints( exit );
+            out.writeInt( roomRefs.get( ends.getFirst() ) );
+            out.writeInt( roomRefs.get( ends.getSecond() ) );
+            out.writeInt( ref( strings, exit.getExit() ) );
+            out.writeBoolean( graph.getEdgeType( exit ) == EdgeType.DIRECTED );
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the header, the magic number must already have been consumed.
+     */
+    public static Header readHeader( DataInputStream in ) throws IOException {
+        int version = in.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException( "unsupported batmap version " + version );
+        }
+        String areaName = readString( in );
+        int roomCount = in.readInt();
+        int exitCount = in.readInt();
+        String entranceId = readString( in );
+        return new Header( version, areaName, roomCount, exitCount, entranceId );
+    }
+
+    /**
+     * Reads a whole area, the magic number must already have been consumed.
+     */
+    public static AreaSaveObject read( DataInputStream in ) throws IOException {
+        Header header = readHeader( in );
+        Area area = new Area( header.getAreaName() );
+
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString( in );
+        }
+
+        AreaSaveObject saveObject = new AreaSaveObject();
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Map<Room, Point2D> locations = saveObject.getLocations();
+        List<Room> rooms = new ArrayList<Room>( header.getRoomCount() );
+        for (int i = 0; i < header.getRoomCount(); i++) {
+            Room room = new Room( string( strings, in.readInt() ), area );
+            room.setShortDesc( string( strings, in.readInt() ) );
+            room.setLongDesc( string( strings, in.readInt() ) );
+            room.setNotes( string( strings, in.readInt() ) );
+            room.setLabel( string( strings, in.readInt() ) );
+            int flags = in.readByte();
+            room.setAreaEntrance( ( flags & ENTRANCE ) != 0 );
+            room.setIndoors( ( flags & INDOORS ) != 0 );
+            if (( flags & COLORED ) != 0) {
+                room.setColor( new Color( in.readInt(), true ) );
+            }
+            double x = in.readDouble();
+            double y = in.readDouble();
+            room.setExits( readRefs( in, strings ) );
+            for (String used : readRefs( in, strings )) {
+                room.useExit( used );
+            }
+            graph.addVertex( room );
+            locations.put( room, new Point2D.Double( x, y ) );
+            rooms.add( room );
+        }
+
+        for (int i = 0; i < header.getExitCount(); i++) {
+            Room from = rooms.get( in.readInt() );
+            Room to = rooms.get( in.readInt() );
+            Exit exit = new Exit( string( strings, in.readInt() ) );
+            EdgeType type = in.readBoolean() ? EdgeType.DIRECTED : EdgeType.UNDIRECTED;
+            graph.addEdge( exit, new Pair<Room>( from, to ), type );
+        }
+        return saveObject;
+    }
+
+    private static int ref( Map<String, Integer> strings, String string ) {
+        if (string == null) {
+            return NULL_REF;
+        }
+        Integer ref = strings.get( string );
+        if (ref == null) {
+            ref = strings.size();
+            strings.put( string, ref );
+        }
+        return ref;
+    }
+
+    private static String string( String[] strings, int ref ) throws IOException {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        if (ref < 0 || ref >= strings.length) {
+            throw new IOException( "broken batmap file, string ref " + ref + " out of " + strings.length );
+        }
+        return strings[ref];
+    }
+
+    private static void writeRefs( DataOutputStream out, Map<String, Integer> strings, Set<String> values ) throws IOException {
+        out.writeShort( values.size() );
+        for (String value : values) {
+            out.writeInt( ref( strings, value ) );
+        }
+    }
+
+    private static Set<String> readRefs( DataInputStream in, String[] strings ) throws IOException {
+        int count = in.readUnsignedShort();
+        Set<String> values = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            values.add( string( strings, in.readInt() ) );
+        }
+        return values;
+    }
+
+    static void writeString( DataOutputStream out, String string ) throws IOException {
+        if (string == null) {
+            out.writeInt( NULL_REF );
+            return;
+        }
+        byte[] bytes = string.getBytes( UTF8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    static String readString( DataInputStream in ) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_REF) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+}
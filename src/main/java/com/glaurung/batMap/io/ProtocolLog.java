@@ -0,0 +1,206 @@
+package com.glaurung.batMap.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Recordings of the raw BAT_MAPPER protocol strings, kept in conf/batMapRecordings. A recording is a
+ * gzipped stream of a header (magic, version, start time) and records of milliseconds since the previous
+ * record as a varint followed by the message. The stream is flushed every few seconds, so if the client
+ * dies only the last moments are lost and the file still reads up to that point.
+ *
+ * @author lauri
+ */
+public class ProtocolLog {
+
+    public static final String SUFFIX = ".bmrec";
+    private static final String DIRNAME = "batMapRecordings";
+    private static final int MAGIC = 0x42524543; // "BREC"
+    private static final int VERSION = 1;
+    private static final long FLUSH_MILLIS = 5000;
+
+    public static File getRecordingDir( String basedir ) {
+        return new File( new File( basedir, "conf" ), DIRNAME );
+    }
+
+    /**
+     * Starts a new recording named after the current time.
+     *
+     * @param basedir
+     * @return recorder, close it to finish the file
+     * @throws IOException
+     */
+    public static Recorder startRecording( String basedir ) throws IOException {
+        File dir = getRecordingDir( basedir );
+        dir.mkdirs();
+        String name = new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date() );
+        return new Recorder( new File( dir, name + SUFFIX ) );
+    }
+
+    /**
+     * Finds a recording by path, or by name inside the recordings dir with or without suffix.
+     *
+     * @param basedir
+     * @param name
+     * @return recording file or null if there is none
+     */
+    public static File findRecording( String basedir, String name ) {
+        File file = new File( name );
+        if (file.isFile()) {
+            return file;
+        }
+        file = new File( getRecordingDir( basedir ), name );
+        if (file.isFile()) {
+            return file;
+        }
+        file = new File( getRecordingDir( basedir ), name + SUFFIX );
+        if (file.isFile()) {
+            return file;
+        }
+        return null;
+    }
+
+    public static Reader open( File file ) throws IOException {
+        return new Reader( file );
+    }
+
+
+    public static class Recorder implements Closeable {
+
+        private final File file;
+        private final DataOutputStream out;
+        private long last;
+        private long lastFlush;
+        private int count = 0;
+
+        private Recorder( File file ) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( new FileOutputStream( file ), 8192, true ) ) );
+            this.last = System.currentTimeMillis();
+            this.lastFlush = last;
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( last );
+        }
+
+        public synchronized void record( String message ) throws IOException {
+            long now = System.currentTimeMillis();
+            writeVarLong( out, Math.max( 0, now - last ) );
+            BinaryAreaFormat.writeString( out, message );
+            last = now;
+            count++;
+            if (now - lastFlush >= FLUSH_MILLIS) {
+                out.flush();
+                lastFlush = now;
+            }
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final long startTime;
+        private long millis = 0;
+        private String message;
+
+        private Reader( File file ) throws IOException {
+            this.in = new DataInputStream( new BufferedInputStream( new GZIPInputStream( new FileInputStream( file ) ) ) );
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException( "not a protocol recording: " + file );
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException( "unsupported recording version " + version + ": " + file );
+                }
+                this.startTime = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return false at the end of the recording, also when the file was cut short
+         * @throws IOException
+         */
+        public boolean next() throws IOException {
+            try {
+                long delta = readVarLong( in );
+                message = BinaryAreaFormat.readString( in );
+                millis += delta;
+                return true;
+            } catch (EOFException e) {
+                message = null;
+                return false;
+            }
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return milliseconds from the start of the recording to the current message
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarLong( DataOutputStream out, long value ) throws IOException {
+        while (( value & ~0x7FL ) != 0) {
+            out.writeByte( (int) ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    private static long readVarLong( DataInputStream in ) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            if (( b & 0x80 ) == 0) {
+                return value;
+            }
+        }
+        throw new IOException( "malformed recording" );
+    }
+
+}
@@ -0,0 +1,359 @@
+package com.glaurung.batMap.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Room;
+
+/**
+ * Inverted index over room short and long descs of every mapped area, kept in conf/batMapSearch with one
+ * file per area. For each area it stores the rooms (id, short desc, lower cased descs) and term to room
+ * postings. AreaDataPersister updates the area in the index whenever it saves one, which rewrites only
+ * that area's file, so searching never has to open the area files. Areas whose file is newer than what
+ * was indexed are reindexed on first search.
+ * <p>
+ * Search keeps the old semantics: a room matches if its short or long desc contains the search text,
+ * ignoring case. Postings of every term containing the longest word of the search text give the
+ * candidates, which are then checked against the stored descs.
+ *
+ * @author lauri
+ */
+public class SearchIndex {
+
+    private static final String INDEX_DIRNAME = "batMapSearch";
+    private static final String OLD_FILENAME = "batMapSearch.idx";
+    private static final String SUFFIX = ".idx";
+    private static final String DIRNAME = "conf";
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 1;
+
+    private static final Map<String, SearchIndex> INDEXES = new HashMap<String, SearchIndex>();
+
+    private final String basedir;
+    private final File dir;
+    private final Map<String, AreaEntry> areas = new TreeMap<String, AreaEntry>( String.CASE_INSENSITIVE_ORDER );
+    private boolean loaded = false;
+    private boolean refreshed = false;
+
+    public static synchronized SearchIndex forBaseDir( String basedir ) {
+        SearchIndex index = INDEXES.get( basedir );
+        if (index == null) {
+            index = new SearchIndex( basedir );
+            INDEXES.put( basedir, index );
+        }
+        return index;
+    }
+
+    private SearchIndex( String basedir ) {
+        this.basedir = basedir;
+        this.dir = new File( new File( basedir, DIRNAME ), INDEX_DIRNAME );
+    }
+
+    /**
+     * Replaces the indexed rooms of one area and writes its index file.
+     *
+     * @param fileKey      area file name without suffix
+     * @param areaName
+     * @param lastModified timestamp of the area file that was just written
+     * @param rooms
+     */
+    public synchronized void update( String fileKey, String areaName, long lastModified, Collection<Room> rooms ) {
+        load();
+        AreaEntry entry = new AreaEntry( areaName, lastModified, rooms );
+        areas.put( fileKey, entry );
+        write( fileKey, entry );
+    }
+
+    /**
+     * @param text search text
+     * @return rooms whose short or long desc contains text, ignoring case. Rooms only carry area, id and descs.
+     */
+    public synchronized List<Room> search( String text ) {
+        load();
+        refresh();
+        String query = text.toLowerCase();
+        String word = longestWord( query );
+        List<Room> found = new LinkedList<Room>();
+        for (AreaEntry entry : areas.values()) {
+            entry.search( query, word, found );
+        }
+        return found;
+    }
+
+    public synchronized int getAreaCount() {
+        load();
+        return areas.size();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        // the whole index used to be in one file, its areas get reindexed on the first search
+        new File( dir.getParentFile(), OLD_FILENAME ).delete();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File indexFile : files) {
+            String name = indexFile.getName();
+            if (! name.endsWith( SUFFIX )) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) )) {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                    continue;
+                }
+                areas.put( name.substring( 0, name.length() - SUFFIX.length() ), AreaEntry.read( in ) );
+            } catch (IOException e) {
+                System.out.println( e );
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with the area files, only areas that changed outside of the index are loaded.
+     */
+    private void refresh() {
+        if (refreshed) {
+            return;
+        }
+        refreshed = true;
+        Set<String> present = new HashSet<String>();
+        for (String areaName : AreaDataPersister.listAreaNames( basedir )) {
+            present.add( areaName );
+            AreaEntry entry = areas.get( areaName );
+            long lastModified = AreaDataPersister.getAreaFile( basedir, areaName ).lastModified();
+            if (entry != null && entry.lastModified == lastModified) {
+                continue;
+            }
+            try {
+                AreaSaveObject saveObject = AreaDataPersister.readArea( basedir, areaName );
+                Collection<Room> rooms = saveObject.getGraph().getVertices();
+                String name = rooms.isEmpty() ? areaName : rooms.iterator().next().getArea().getName();
+                entry = new AreaEntry( name, lastModified, rooms );
+                areas.put( areaName, entry );
+                write( areaName, entry );
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.println( e );
+            }
+        }
+        for (Iterator<String> keys = areas.keySet().iterator(); keys.hasNext(); ) {
+            String key = keys.next();
+            if (! present.contains( key )) {
+                keys.remove();
+                new File( dir, key + SUFFIX ).delete();
+            }
+        }
+    }
+
+    private void write( String fileKey, AreaEntry entry ) {
+        if (! dir.isDirectory() && ! dir.mkdirs()) {
+            System.out.println( "could not create " + dir );
+            return;
+        }
+        File file = new File( dir, fileKey + SUFFIX );
+        File temp = new File( dir, fileKey + SUFFIX + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) )) {
+            out.writeInt( MAGIC );
+            out.writeShort( VERSION );
+            entry.write( out );
+        } catch (IOException e) {
+            System.out.println( e );
+            temp.delete();
+            return;
+        }
+        if (! temp.renameTo( file )) {
+            file.delete();
+            temp.renameTo( file );
+        }
+    }
+
+    static List<String> tokenize( String lowerCaseText ) {
+        List<String> words = new ArrayList<String>();
+        int start = - 1;
+        for (int i = 0; i <= lowerCaseText.length(); i++) {
+            boolean wordChar = i < lowerCaseText.length() && Character.isLetterOrDigit( lowerCaseText.charAt( i ) );
+            if (wordChar && start == - 1) {
+                start = i;
+            } else if (! wordChar && start != - 1) {
+                words.add( lowerCaseText.substring( start, i ) );
+                start = - 1;
+            }
+        }
+        return words;
+    }
+
+    private static String longestWord( String query ) {
+        String longest = null;
+        for (String word : tokenize( query )) {
+            if (longest == null || word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        return longest;
+    }
+
+
+    /**
+     * Indexed rooms of one area
+     */
+    private static class AreaEntry {
+        final String areaName;
+        final long lastModified;
+        final String[] ids;
+        final String[] shortDescs;
+        final String[] lowerShortDescs;
+        final String[] lowerLongDescs;
+        final Map<String, int[]> postings;
+
+        AreaEntry( String areaName, long lastModified, String[] ids, String[] shortDescs, String[] lowerLongDescs, Map<String, int[]> postings ) {
+            this.areaName = areaName;
+            this.lastModified = lastModified;
+            this.ids = ids;
+            this.shortDescs = shortDescs;
+            this.lowerLongDescs = lowerLongDescs;
+            this.postings = postings;
+            this.lowerShortDescs = new String[shortDescs.length];
+            for (int i = 0; i < shortDescs.length; i++) {
+                lowerShortDescs[i] = shortDescs[i] == null ? null : shortDescs[i].toLowerCase();
+            }
+        }
+
+        AreaEntry( String areaName, long lastModified, Collection<Room> rooms ) {
+            this( areaName, lastModified, new String[rooms.size()], new String[rooms.size()], new String[rooms.size()], new HashMap<String, int[]>() );
+            Map<String, Set<Integer>> terms = new HashMap<String, Set<Integer>>();
+            int doc = 0;
+            for (Room room : rooms) {
+                ids[doc] = room.getId();
+                shortDescs[doc] = room.getShortDesc();
+                lowerShortDescs[doc] = room.getShortDesc() == null ? null : room.getShortDesc().toLowerCase();
+                lowerLongDescs[doc] = room.getLongDesc() == null ? null : room.getLongDesc().toLowerCase();
+                addTerms( terms, lowerShortDescs[doc], doc );
+                addTerms( terms, lowerLongDescs[doc], doc );
+                doc++;
+            }
+            for (Map.Entry<String, Set<Integer>> term : terms.entrySet()) {
+                int[] docs = new int[term.getValue().size()];
+                int i = 0;
+                for (Integer d : term.getValue()) {
+                    docs[i++] = d;
+                }
+                postings.put( term.getKey(), docs );
+            }
+        }
+
+        private static void addTerms( Map<String, Set<Integer>> terms, String text, int doc ) {
+            if (text == null) {
+                return;
+            }
+            for (String word : tokenize( text )) {
+                Set<Integer> docs = terms.get( word );
+                if (docs == null) {
+                    docs = new TreeSet<Integer>();
+                    terms.put( word, docs );
+                }
+                docs.add( doc );
+            }
+        }
+
+        void search( String query, String word, List<Room> found ) {
+            Collection<Integer> candidates;
+            if (word == null) {
+                candidates = new ArrayList<Integer>();
+                for (int doc = 0; doc < ids.length; doc++) {
+                    candidates.add( doc );
+                }
+            } else {
+                candidates = new TreeSet<Integer>();
+                for (Map.Entry<String, int[]> term : postings.entrySet()) {
+                    if (term.getKey().contains( word )) {
+                        for (int doc : term.getValue()) {
+                            candidates.add( doc );
+                        }
+                    }
+                }
+            }
+
+            Area area = null;
+            for (int doc : candidates) {
+                if (lowerShortDescs[doc] == null || lowerLongDescs[doc] == null) {
+                    // in case of bad room data, just skip it
+                    continue;
+                }
+                if (lowerLongDescs[doc].contains( query ) || lowerShortDescs[doc].contains( query )) {
+                    if (area == null) {
+                        area = new Area( areaName );
+                    }
+                    found.add( new Room( shortDescs[doc], ids[doc], area ) );
+                }
+            }
+        }
+
+        void write( DataOutputStream out ) throws IOException {
+            BinaryAreaFormat.writeString( out, areaName );
+            out.writeLong( lastModified );
+            out.writeInt( ids.length );
+            for (int doc = 0; doc < ids.length; doc++) {
+                BinaryAreaFormat.writeString( out, ids[doc] );
+                BinaryAreaFormat.writeString( out, shortDescs[doc] );
+                BinaryAreaFormat.writeString( out, lowerLongDescs[doc] );
+            }
+            out.writeInt( postings.size() );
+            for (Map.Entry<String, int[]> term : postings.entrySet()) {
+                BinaryAreaFormat.writeString( out, term.getKey() );
+                out.writeInt( term.getValue().length );
+                for (int doc : term.getValue()) {
+                    out.writeInt( doc );
+                }
+            }
+        }
+
+        static AreaEntry read( DataInputStream in ) throws IOException {
+            String areaName = BinaryAreaFormat.readString( in );
+            long lastModified = in.readLong();
+            int count = in.readInt();
+            String[] ids = new String[count];
+            String[] shortDescs = new String[count];
+            String[] lowerLongDescs = new String[count];
+            for (int doc = 0; doc < count; doc++) {
+                ids[doc] = BinaryAreaFormat.readString( in );
+                shortDescs[doc] = BinaryAreaFormat.readString( in );
+                lowerLongDescs[doc] = BinaryAreaFormat.readString( in );
+            }
+            int termCount = in.readInt();
+            Map<String, int[]> postings = new LinkedHashMap<String, int[]>( termCount * 2 );
+            for (int i = 0; i < termCount; i++) {
+                String term = BinaryAreaFormat.readString( in );
+                int[] docs = new int[in.readInt()];
+                for (int d = 0; d < docs.length; d++) {
+                    docs[d] = in.readInt();
+                }
+                postings.put( term, docs );
+            }
+            return new AreaEntry( areaName, lastModified, ids, shortDescs, lowerLongDescs, postings );
+        }
+    }
+
+}
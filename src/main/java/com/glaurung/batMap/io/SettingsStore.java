@@ -0,0 +1,189 @@
+package com.glaurung.batMap.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small serialized settings files under conf, written on a background thread once updates have stopped
+ * for a moment. Dragging the window or typing into the corpse settings updates the value on every event,
+ * only the last one gets written. The value is serialized when it is put, so the caller may go on
+ * changing it. Files are written outside the lock put takes, so the event thread never waits for the disk.
+ *
+ * @author lauri
+ */
+public class SettingsStore {
+
+    private static final String DIRNAME = "conf";
+    private static final long DELAY_MILLIS = 500;
+
+    private static final Map<String, SettingsStore> STORES = new HashMap<String, SettingsStore>();
+    private static ScheduledExecutorService writer;
+
+    private final File dir;
+    private final Map<String, byte[]> pending = new LinkedHashMap<String, byte[]>();
+    private Map<String, byte[]> writing = new LinkedHashMap<String, byte[]>();
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> scheduled;
+
+    private long updates = 0;
+    private long writes = 0;
+
+    public static synchronized SettingsStore forBaseDir( String basedir ) {
+        SettingsStore store = STORES.get( basedir );
+        if (store == null) {
+            store = new SettingsStore( basedir );
+            STORES.put( basedir, store );
+        }
+        return store;
+    }
+
+    private SettingsStore( String basedir ) {
+        this.dir = new File( basedir, DIRNAME );
+    }
+
+    /**
+     * Replaces the value of the settings file, written after no updates have come in for a while.
+     *
+     * @param fileName
+     * @param value
+     */
+    public void put( String fileName, Serializable value ) {
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream( out )) {
+                objectOutputStream.writeObject( value );
+            }
+            bytes = out.toByteArray();
+        } catch (IOException e) {
+            System.out.println( e );
+            return;
+        }
+        synchronized (this) {
+            pending.put( fileName, bytes );
+            updates++;
+            if (scheduled != null) {
+                scheduled.cancel( false );
+            }
+            scheduled = writer().schedule( new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, DELAY_MILLIS, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * @param fileName
+     * @return value waiting to be written or read from the file, null if there is none or it can't be read
+     */
+    public Object load( String fileName ) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = pending.get( fileName );
+            if (bytes == null) {
+                bytes = writing.get( fileName );
+            }
+        }
+        try (InputStream input = bytes != null ? new ByteArrayInputStream( bytes ) : new FileInputStream( new File( dir, fileName ) );
+             ObjectInputStream objectInputStream = new ObjectInputStream( input )) {
+            return objectInputStream.readObject();
+        } catch (IOException e) {
+            System.out.println( e );
+        } catch (ClassNotFoundException e) {
+            System.out.println( e );
+        }
+        return null;
+    }
+
+    /**
+     * Writes everything waiting right away, called on exit. What is waiting is taken under the lock and
+     * written after letting go of it, so put doesn't block meanwhile. Flushes run one at a time, in the
+     * order they took their values.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<String, byte[]> toWrite;
+            synchronized (this) {
+                if (scheduled != null) {
+                    scheduled.cancel( false );
+                    scheduled = null;
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                toWrite = new LinkedHashMap<String, byte[]>( pending );
+                pending.clear();
+                writing = toWrite;
+            }
+            int written = 0;
+            for (Map.Entry<String, byte[]> entry : toWrite.entrySet()) {
+                try {
+                    write( entry.getKey(), entry.getValue() );
+                    written++;
+                } catch (IOException e) {
+                    System.out.println( e );
+                }
+            }
+            synchronized (this) {
+                writing = new LinkedHashMap<String, byte[]>();
+                writes += written;
+            }
+        }
+    }
+
+    /**
+     * Writes a temp file and renames it over the old one, so a crash never leaves half a file.
+     */
+    private void write( String fileName, byte[] bytes ) throws IOException {
+        File file = new File( dir, fileName );
+        File temp = new File( dir, fileName + ".tmp" );
+        try (FileOutputStream fileOutputStream = new FileOutputStream( temp )) {
+            fileOutputStream.write( bytes );
+            fileOutputStream.getChannel().force( false );
+        }
+        if (! temp.renameTo( file )) {
+            // windows doesn't rename over an existing file
+            if (! file.delete() || ! temp.renameTo( file )) {
+                throw new IOException( "could not rename " + temp + " to " + file );
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "batMap-settings" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+        return writer;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format( "settings: %d updates, %d writes, %d pending", updates, writes, pending.size() );
+    }
+
+}
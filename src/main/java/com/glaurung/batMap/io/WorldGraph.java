@@ -0,0 +1,501 @@
+package com.glaurung.batMap.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * Map of how areas connect to each other, kept in conf/batMapWorld.dat and small enough to stay loaded.
+ * It holds the transitions seen while walking (room of one area, exit taken, room of the next area),
+ * and for every area the ways from each room where it was entered to the rooms it was left from and to
+ * its labeled rooms. The ways inside an area are worked out when the area is saved, so finding a route
+ * through several areas never loads their maps. A new transition leaves the ways of both its areas stale
+ * until they are worked out again, see {@link #isStale(String)}.
+ * <p>
+ * Only direct moves from area to area are recorded, leaving to the realm map loses the position.
+ *
+ * @author lauri
+ */
+public class WorldGraph {
+
+    private static final String FILENAME = "batMapWorld.dat";
+    private static final String DIRNAME = "conf";
+    private static final int MAGIC = 0x42574C44; // "BWLD"
+    private static final int VERSION = 2;
+
+    private static final Map<String, WorldGraph> GRAPHS = new HashMap<String, WorldGraph>();
+
+    private final File file;
+    private final Set<Transition> transitions = new LinkedHashSet<Transition>();
+    private final Map<String, AreaRoutes> areas = new TreeMap<String, AreaRoutes>( String.CASE_INSENSITIVE_ORDER );
+    private final Set<String> stale = new TreeSet<String>( String.CASE_INSENSITIVE_ORDER );
+    private boolean loaded = false;
+
+    /**
+     * Taking exit from room fromRoom of area fromArea leads to room toRoom of area toArea
+     */
+    public static class Transition {
+        private final String fromArea;
+        private final String fromRoom;
+        private final String exit;
+        private final String toArea;
+        private final String toRoom;
+
+        Transition( String fromArea, String fromRoom, String exit, String toArea, String toRoom ) {
+            this.fromArea = fromArea;
+            this.fromRoom = fromRoom;
+            this.exit = exit;
+            this.toArea = toArea;
+            this.toRoom = toRoom;
+        }
+
+        public String getFromArea() {
+            return fromArea;
+        }
+
+        public String getFromRoom() {
+            return fromRoom;
+        }
+
+        public String getExit() {
+            return exit;
+        }
+
+        public String getToArea() {
+            return toArea;
+        }
+
+        public String getToRoom() {
+            return toRoom;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if (! ( o instanceof Transition )) {
+                return false;
+            }
+            Transition t = (Transition) o;
+            return fromArea.equalsIgnoreCase( t.fromArea ) && fromRoom.equals( t.fromRoom ) && exit.equals( t.exit )
+                    && toArea.equalsIgnoreCase( t.toArea ) && toRoom.equals( t.toRoom );
+        }
+
+        @Override
+        public int hashCode() {
+            return fromRoom.hashCode() * 31 + toRoom.hashCode();
+        }
+    }
+
+    /**
+     * Labels of one area, and exits to take from its entrance rooms to its exit and labeled rooms
+     */
+    private static class AreaRoutes {
+        final Map<String, String> labels = new HashMap<String, String>();
+        final Map<String, Map<String, List<String>>> routes = new HashMap<String, Map<String, List<String>>>();
+    }
+
+    public static synchronized WorldGraph forBaseDir( String basedir ) {
+        WorldGraph world = GRAPHS.get( basedir );
+        if (world == null) {
+            world = new WorldGraph( basedir );
+            GRAPHS.put( basedir, world );
+        }
+        return world;
+    }
+
+    private WorldGraph( String basedir ) {
+        this.file = new File( new File( basedir, DIRNAME ), FILENAME );
+    }
+
+    /**
+     * Records a move from one area straight into another. The ways through both areas go stale, the room
+     * left from is a new target in one and the room entered a new start in the other.
+     */
+    public synchronized void recordTransition( String fromArea, String fromRoom, String exit, String toArea, String toRoom ) {
+        load();
+        if (transitions.add( new Transition( fromArea, fromRoom, exit, toArea, toRoom ) )) {
+            stale.add( fromArea );
+            stale.add( toArea );
+            write();
+        }
+    }
+
+    /**
+     * @param areaName
+     * @return true if a transition has been recorded since the ways through the area were worked out
+     */
+    public synchronized boolean isStale( String areaName ) {
+        load();
+        return stale.contains( areaName );
+    }
+
+    /**
+     * @return areas whose ways need to be worked out again
+     */
+    public synchronized Set<String> getStaleAreas() {
+        load();
+        return new LinkedHashSet<String>( stale );
+    }
+
+    /**
+     * Works out the ways through an area from the rooms it has been entered to the rooms it has been left
+     * from and to its labeled rooms, called when the area is saved or its ways have gone stale.
+     *
+     * @param areaName
+     * @param graph    whole area
+     */
+    public synchronized void updateArea( String areaName, Graph<Room, Exit> graph ) {
+        load();
+        Map<String, Room> rooms = new HashMap<String, Room>();
+        for (Room room : graph.getVertices()) {
+            rooms.put( room.getId(), room );
+        }
+        AreaRoutes area = new AreaRoutes();
+        Set<String> targets = new HashSet<String>();
+        for (Transition transition : transitions) {
+            if (transition.getFromArea().equalsIgnoreCase( areaName )) {
+                targets.add( transition.getFromRoom() );
+            }
+        }
+        for (Room room : rooms.values()) {
+            if (room.getLabel() != null) {
+                area.labels.put( key( room.getLabel() ), room.getId() );
+                targets.add( room.getId() );
+            }
+        }
+        for (Transition transition : transitions) {
+            Room entrance = rooms.get( transition.getToRoom() );
+            if (transition.getToArea().equalsIgnoreCase( areaName ) && entrance != null && ! area.routes.containsKey( entrance.getId() )) {
+                area.routes.put( entrance.getId(), search( graph, entrance, targets, rooms ) );
+            }
+        }
+        areas.put( areaName, area );
+        stale.remove( areaName );
+        write();
+    }
+
+    /**
+     * @param areaName
+     * @return ids of rooms that have been used to leave the area straight into another area
+     */
+    public synchronized Set<String> getExitRooms( String areaName ) {
+        load();
+        Set<String> exitRooms = new HashSet<String>();
+        for (Transition transition : transitions) {
+            if (transition.getFromArea().equalsIgnoreCase( areaName )) {
+                exitRooms.add( transition.getFromRoom() );
+            }
+        }
+        return exitRooms;
+    }
+
+    /**
+     * @param areaName
+     * @return areas that have been entered straight from this area or left into it
+     */
+    public synchronized Set<String> getNeighbourAreas( String areaName ) {
+        load();
+        Set<String> neighbours = new LinkedHashSet<String>();
+        for (Transition transition : transitions) {
+            if (transition.getFromArea().equalsIgnoreCase( areaName ) && ! transition.getToArea().equalsIgnoreCase( areaName )) {
+                neighbours.add( transition.getToArea() );
+            } else if (transition.getToArea().equalsIgnoreCase( areaName ) && ! transition.getFromArea().equalsIgnoreCase( areaName )) {
+                neighbours.add( transition.getFromArea() );
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * @param label
+     * @return true if some area other than areaName has a room with this label
+     */
+    public synchronized boolean labelExists( String areaName, String label ) {
+        load();
+        for (Map.Entry<String, AreaRoutes> area : areas.entrySet()) {
+            if (! area.getKey().equalsIgnoreCase( areaName ) && area.getValue().labels.containsKey( key( label ) )) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the shortest known route from the current room to a labeled room in another area.
+     *
+     * @param fromArea   area of current room
+     * @param startPaths exits from current room to each exit room of fromArea that can be reached
+     * @param label
+     * @return exits to take, or null if no route is known
+     */
+    public synchronized List<String> findRoute( String fromArea, Map<String, List<String>> startPaths, String label ) {
+        load();
+        Map<String, Integer> distances = new HashMap<String, Integer>();
+        Map<String, Step> steps = new HashMap<String, Step>();
+        PriorityQueue<Node> queue = new PriorityQueue<Node>();
+        for (Map.Entry<String, List<String>> start : startPaths.entrySet()) {
+            String node = node( fromArea, start.getKey() );
+            relax( distances, steps, queue, node, start.getValue().size(), new Step( null, start.getValue() ) );
+        }
+
+        while (! queue.isEmpty()) {
+            Node current = queue.poll();
+            if (current.distance > distances.get( current.key )) {
+                continue;
+            }
+            String area = current.area;
+            String room = current.room;
+            AreaRoutes routes = areas.get( area );
+            if (! area.equalsIgnoreCase( fromArea ) && routes != null && room.equals( routes.labels.get( key( label ) ) )) {
+                return collect( steps, current.key );
+            }
+            // leave the area from this room
+            for (Transition transition : transitions) {
+                if (transition.getFromArea().equalsIgnoreCase( area ) && transition.getFromRoom().equals( room )) {
+                    relax( distances, steps, queue, node( transition.getToArea(), transition.getToRoom() ), current.distance + 1,
+                            new Step( current.key, Collections.singletonList( transition.getExit() ) ) );
+                }
+            }
+            // walk through the area from where it was entered
+            Map<String, List<String>> through = routes == null ? null : routes.routes.get( room );
+            if (through != null) {
+                for (Map.Entry<String, List<String>> target : through.entrySet()) {
+                    relax( distances, steps, queue, node( area, target.getKey() ), current.distance + target.getValue().size(),
+                            new Step( current.key, target.getValue() ) );
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized int getTransitionCount() {
+        load();
+        return transitions.size();
+    }
+
+    private static void relax( Map<String, Integer> distances, Map<String, Step> steps, PriorityQueue<Node> queue, String node, int distance, Step step ) {
+        Integer known = distances.get( node );
+        if (known == null || distance < known) {
+            distances.put( node, distance );
+            steps.put( node, step );
+            queue.add( new Node( node, distance ) );
+        }
+    }
+
+    private static List<String> collect( Map<String, Step> steps, String node ) {
+        List<List<String>> parts = new ArrayList<List<String>>();
+        for (Step step = steps.get( node ); step != null; step = step.previous == null ? null : steps.get( step.previous )) {
+            parts.add( step.exits );
+        }
+        Collections.reverse( parts );
+        List<String> route = new ArrayList<String>();
+        for (List<String> part : parts) {
+            route.addAll( part );
+        }
+        return route;
+    }
+
+    private static Map<String, List<String>> search( Graph<Room, Exit> graph, Room from, Set<String> targets, Map<String, Room> rooms ) {
+        Map<Room, Exit> incoming = new HashMap<Room, Exit>();
+        Map<Room, Room> previous = new HashMap<Room, Room>();
+        ArrayDeque<Room> queue = new ArrayDeque<Room>();
+        queue.add( from );
+        previous.put( from, null );
+        while (! queue.isEmpty()) {
+            Room room = queue.poll();
+            for (Exit exit : graph.getOutEdges( room )) {
+                Room next = graph.getOpposite( room, exit );
+                if (next != null && ! previous.containsKey( next )) {
+                    previous.put( next, room );
+                    incoming.put( next, exit );
+                    queue.add( next );
+                }
+            }
+        }
+        Map<String, List<String>> paths = new HashMap<String, List<String>>();
+        for (String target : targets) {
+            Room room = rooms.get( target );
+            if (room == null || ! previous.containsKey( room )) {
+                continue;
+            }
+            List<String> path = new ArrayList<String>();
+            for (; ! room.equals( from ); room = previous.get( room )) {
+                path.add( incoming.get( room ).getExit() );
+            }
+            Collections.reverse( path );
+            paths.put( target, path );
+        }
+        return paths;
+    }
+
+    private static String node( String area, String room ) {
+        return area.toLowerCase( Locale.ENGLISH ) + '\n' + room;
+    }
+
+    private static String key( String label ) {
+        return label.toLowerCase( Locale.ENGLISH );
+    }
+
+    private static class Step {
+        final String previous;
+        final List<String> exits;
+
+        Step( String previous, List<String> exits ) {
+            this.previous = previous;
+            this.exits = exits;
+        }
+    }
+
+    private static class Node implements Comparable<Node> {
+        final String key;
+        final String area;
+        final String room;
+        final int distance;
+
+        Node( String key, int distance ) {
+            this.key = key;
+            int split = key.indexOf( '\n' );
+            this.area = key.substring( 0, split );
+            this.room = key.substring( split + 1 );
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo( Node o ) {
+            return distance < o.distance ? - 1 : ( distance == o.distance ? 0 : 1 );
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (! file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) )) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int version = in.readShort();
+            if (version > VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                transitions.add( new Transition( BinaryAreaFormat.readString( in ), BinaryAreaFormat.readString( in ),
+                        BinaryAreaFormat.readString( in ), BinaryAreaFormat.readString( in ), BinaryAreaFormat.readString( in ) ) );
+            }
+            int areaCount = in.readInt();
+            for (int i = 0; i < areaCount; i++) {
+                String areaName = BinaryAreaFormat.readString( in );
+                AreaRoutes area = new AreaRoutes();
+                int labelCount = in.readInt();
+                for (int l = 0; l < labelCount; l++) {
+                    area.labels.put( BinaryAreaFormat.readString( in ), BinaryAreaFormat.readString( in ) );
+                }
+                int entranceCount = in.readInt();
+                for (int e = 0; e < entranceCount; e++) {
+                    String entrance = BinaryAreaFormat.readString( in );
+                    Map<String, List<String>> paths = new HashMap<String, List<String>>();
+                    int pathCount = in.readInt();
+                    for (int p = 0; p < pathCount; p++) {
+                        String target = BinaryAreaFormat.readString( in );
+                        int length = in.readInt();
+                        List<String> path = new ArrayList<String>( length );
+                        for (int x = 0; x < length; x++) {
+                            path.add( BinaryAreaFormat.readString( in ) );
+                        }
+                        paths.put( target, path );
+                    }
+                    area.routes.put( entrance, paths );
+                }
+                areas.put( areaName, area );
+            }
+            if (version >= 2) {
+                int staleCount = in.readInt();
+                for (int i = 0; i < staleCount; i++) {
+                    stale.add( BinaryAreaFormat.readString( in ) );
+                }
+            }
+        } catch (IOException e) {
+            System.out.println( e );
+            transitions.clear();
+            areas.clear();
+            stale.clear();
+        }
+    }
+
+    private void write() {
+        File temp = new File( file.getPath() + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) )) {
+            out.writeInt( MAGIC );
+            out.writeShort( VERSION );
+            out.writeInt( transitions.size() );
+            for (Transition transition : transitions) {
+                BinaryAreaFormat.writeString( out, transition.getFromArea() );
+                BinaryAreaFormat.writeString( out, transition.getFromRoom() );
+                BinaryAreaFormat.writeString( out, transition.getExit() );
+                BinaryAreaFormat.writeString( out, transition.getToArea() );
+                BinaryAreaFormat.writeString( out, transition.getToRoom() );
+            }
+            out.writeInt( areas.size() );
+            for (Map.Entry<String, AreaRoutes> area : areas.entrySet()) {
+                BinaryAreaFormat.writeString( out, area.getKey() );
+                out.writeInt( area.getValue().labels.size() );
+                for (Map.Entry<String, String> label : area.getValue().labels.entrySet()) {
+                    BinaryAreaFormat.writeString( out, label.getKey() );
+                    BinaryAreaFormat.writeString( out, label.getValue() );
+                }
+                out.writeInt( area.getValue().routes.size() );
+                for (Map.Entry<String, Map<String, List<String>>> entrance : area.getValue().routes.entrySet()) {
+                    BinaryAreaFormat.writeString( out, entrance.getKey() );
+                    out.writeInt( entrance.getValue().size() );
+                    for (Map.Entry<String, List<String>> path : entrance.getValue().entrySet()) {
+                        BinaryAreaFormat.writeString( out, path.getKey() );
+                        out.writeInt( path.getValue().size() );
+                        for (String exit : path.getValue()) {
+                            BinaryAreaFormat.writeString( out, exit );
+                        }
+                    }
+                }
+            }
+            out.writeInt( stale.size() );
+            for (String areaName : stale) {
+                BinaryAreaFormat.writeString( out, areaName );
+            }
+        } catch (IOException e) {
+            System.out.println( e );
+            temp.delete();
+            return;
+        }
+        if (! temp.renameTo( file )) {
+            file.delete();
+            temp.renameTo( file );
+        }
+    }
+
+}
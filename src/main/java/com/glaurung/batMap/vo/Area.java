@@ -7,6 +7,7 @@ public class Area implements Serializable {
 
     private static final long serialVersionUID = 5397970358054415742L;
     private String name;
+    private transient volatile long generation = 0;
 
     public Area( String name ) {
         this.name = name;
@@ -20,5 +21,21 @@ public class Area implements Serializable {
         this.name = name;
     }
 
+    /**
+     * Called whenever something saved of the area changes: rooms, exits, room values or locations. Two
+     * threads racing here may lose an increment, but the generation still moves, which is all that saving
+     * needs to know.
+     */
+    public void markChanged() {
+        generation++;
+    }
+
+    /**
+     * @return number that changes every time the area changes, not kept over saving and loading
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
 
 }
@@ -0,0 +1,76 @@
+package com.glaurung.batMap.vo;
+
+import java.util.Set;
+
+/**
+ * One parsed BAT_MAPPER protocol message, either a room entered or the realm map reached.
+ *
+ * @author lauri
+ */
+public class MapperEvent {
+
+    public enum Type {
+        ROOM, REALM_MAP
+    }
+
+    private final Type type;
+    private final String areaName;
+    private final String roomUID;
+    private final String exitUsed;
+    private final boolean indoors;
+    private final String shortDesc;
+    private final String longDesc;
+    private final Set<String> exits;
+
+    private MapperEvent( Type type, String areaName, String roomUID, String exitUsed, boolean indoors, String shortDesc, String longDesc, Set<String> exits ) {
+        this.type = type;
+        this.areaName = areaName;
+        this.roomUID = roomUID;
+        this.exitUsed = exitUsed;
+        this.indoors = indoors;
+        this.shortDesc = shortDesc;
+        this.longDesc = longDesc;
+        this.exits = exits;
+    }
+
+    public static MapperEvent room( String areaName, String roomUID, String exitUsed, boolean indoors, String shortDesc, String longDesc, Set<String> exits ) {
+        return new MapperEvent( Type.ROOM, areaName, roomUID, exitUsed, indoors, shortDesc, longDesc, exits );
+    }
+
+    public static MapperEvent realmMap() {
+        return new MapperEvent( Type.REALM_MAP, null, null, null, false, null, null, null );
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAreaName() {
+        return areaName;
+    }
+
+    public String getRoomUID() {
+        return roomUID;
+    }
+
+    public String getExitUsed() {
+        return exitUsed;
+    }
+
+    public boolean isIndoors() {
+        return indoors;
+    }
+
+    public String getShortDesc() {
+        return shortDesc;
+    }
+
+    public String getLongDesc() {
+        return longDesc;
+    }
+
+    public Set<String> getExits() {
+        return exits;
+    }
+
+}
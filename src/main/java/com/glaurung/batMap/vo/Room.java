@@ -55,7 +55,10 @@ public class Room implements Serializable {
     }
 
     public void setShortDesc( String shortDesc ) {
-        this.shortDesc = shortDesc;
+        if (! same( this.shortDesc, shortDesc )) {
+            this.shortDesc = shortDesc;
+            changed();
+        }
     }
 
     public String getLongDesc() {
@@ -63,7 +66,10 @@ public class Room implements Serializable {
     }
 
     public void setLongDesc( String longDesc ) {
-        this.longDesc = longDesc;
+        if (! same( this.longDesc, longDesc )) {
+            this.longDesc = longDesc;
+            changed();
+        }
     }
 
 
@@ -73,7 +79,10 @@ public class Room implements Serializable {
 
 
     public void setAreaEntrance( boolean areaEntrance ) {
-        this.areaEntrance = areaEntrance;
+        if (this.areaEntrance != areaEntrance) {
+            this.areaEntrance = areaEntrance;
+            changed();
+        }
     }
 
 
@@ -119,6 +128,7 @@ public class Room implements Serializable {
 
     public void setExits( Set<String> exits ) {
         this.exits = exits;
+        changed();
     }
 
     public boolean isIndoors() {
@@ -126,7 +136,10 @@ public class Room implements Serializable {
     }
 
     public void setIndoors( boolean indoors ) {
-        this.indoors = indoors;
+        if (this.indoors != indoors) {
+            this.indoors = indoors;
+            changed();
+        }
     }
 
     public String toString() {
@@ -142,17 +155,25 @@ public class Room implements Serializable {
 
     }
 
+    public int hashCode() {
+        return this.id == null ? 0 : this.id.hashCode();
+    }
+
     public void setDescs( String shortDesc, String longDesc ) {
-        this.shortDesc = shortDesc;
-        this.longDesc = longDesc;
+        setShortDesc( shortDesc );
+        setLongDesc( longDesc );
     }
 
     public void addExits( Collection<String> outExits ) {
-        this.exits.addAll( outExits );
+        if (this.exits.addAll( outExits )) {
+            changed();
+        }
     }
 
     public void addExit( String exit ) {
-        this.exits.add( exit );
+        if (this.exits.add( exit )) {
+            changed();
+        }
     }
 
     public String getNotes() {
@@ -164,15 +185,24 @@ public class Room implements Serializable {
     }
 
     public void setColor( Color color ) {
-        this.color = color;
+        if (! same( this.color, color )) {
+            this.color = color;
+            changed();
+        }
     }
 
     public void setNotes( String notes ) {
-        this.notes = notes;
+        if (! same( this.notes, notes )) {
+            this.notes = notes;
+            changed();
+        }
     }
 
     public void setLabel(String label){
-        this.label = label;
+        if (! same( this.label, label )) {
+            this.label = label;
+            changed();
+        }
     }
 
     public String getLabel(){
@@ -183,7 +213,9 @@ public class Room implements Serializable {
         if(usedExits == null){
             usedExits = new HashSet<>();
         }
-        this.usedExits.add(exit);
+        if(this.usedExits.add(exit)){
+            changed();
+        }
     }
     public boolean allExitsHaveBeenUSed(){
         if(usedExits == null){
@@ -194,7 +226,30 @@ public class Room implements Serializable {
         }
         return false;
     }
+    public Set<String> getUsedExits(){
+        if(usedExits == null){
+            usedExits = new HashSet<>();
+        }
+        return this.usedExits;
+    }
     public void resetExitUsage(){
+        if(usedExits == null || ! usedExits.isEmpty()){
+            changed();
+        }
         this.usedExits = new HashSet<>();
     }
+
+    /**
+     * Tells the area that something saved of the room changed, see {@link Area#markChanged()}.
+     * Current, picked and drawn are view state and don't count.
+     */
+    private void changed() {
+        if (area != null) {
+            area.markChanged();
+        }
+    }
+
+    private static boolean same( Object a, Object b ) {
+        return a == null ? b == null : a.equals( b );
+    }
 }
@@ -0,0 +1,63 @@
+package com.glaurung.batMap.controller;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import com.glaurung.batMap.io.ProtocolLog;
+import com.glaurung.batMap.vo.MapperEvent;
+
+/**
+ * Replays a protocol recording into a headless engine as fast as it goes, saving the areas into basedir,
+ * and prints the end to end throughput. Replaying into an empty basedir rebuilds the maps from scratch.
+ * <pre>
+ * java HeadlessReplay &lt;basedir&gt; &lt;recording&gt;
+ * </pre>
+ */
+public class HeadlessReplay {
+
+    public static void main( String[] args ) throws Exception {
+        if (args.length < 2) {
+            System.out.println( "usage: HeadlessReplay <basedir> <recording>" );
+            return;
+        }
+        String basedir = args[0];
+        File recording = ProtocolLog.findRecording( basedir, args[1] );
+        if (recording == null) {
+            System.out.println( "no recording " + args[1] );
+            return;
+        }
+        new File( new File( basedir, "conf" ), "batMapAreas" ).mkdirs();
+
+        MapperEngine engine = new MapperEngine( null, false );
+        engine.setBaseDir( basedir );
+        final MapperIngest ingest = new MapperIngest( engine, null );
+        engine.setIngest( ingest );
+        final MapperProtocolParser parser = new MapperProtocolParser();
+
+        long start = System.nanoTime();
+        ProtocolReplay replay = new ProtocolReplay( recording, new ActionListener() {
+            @Override
+            public void actionPerformed( ActionEvent event ) {
+                MapperEvent mapperEvent = parser.parse( event.getActionCommand() );
+                if (mapperEvent != null) {
+                    ingest.submit( mapperEvent );
+                }
+            }
+        }, 0 );
+        replay.run();
+        engine.save();
+        ingest.drain();
+        engine.flushSaves();
+        long millis = Math.max( 1, ( System.nanoTime() - start ) / 1000000 );
+        ingest.shutdown();
+
+        if (replay.getError() != null) {
+            System.out.println( "replay stopped: " + replay.getError().getMessage() );
+        }
+        System.out.println( String.format( "replayed %d messages in %d ms, %.0f messages/s", replay.getCount(), millis,
+                replay.getCount() * 1000.0 / millis ) );
+        System.out.println( ingest );
+    }
+
+}
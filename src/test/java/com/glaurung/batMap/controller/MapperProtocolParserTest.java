@@ -0,0 +1,42 @@
+package com.glaurung.batMap.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.glaurung.batMap.vo.MapperEvent;
+
+public class MapperProtocolParserTest {
+
+    private static String message( String exits ) {
+        return "BAT_MAPPER;;area;;uid1;;n;;0;;short;;long;;" + exits + ";;";
+    }
+
+    private static List<String> split( String exits ) {
+        return Arrays.asList( exits.split( "," ) );
+    }
+
+    @Test
+    public void keepsEveryExitOfALongList() {
+        StringBuilder exits = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            exits.append( "exit" ).append( i ).append( ',' );
+        }
+        MapperEvent event = new MapperProtocolParser().parse( message( exits.toString() ) );
+        assertEquals( split( exits.toString() ), new ArrayList<String>( event.getExits() ) );
+    }
+
+    @Test
+    public void splitsLikeStringSplit() {
+        MapperProtocolParser parser = new MapperProtocolParser();
+        for (String exits : new String[]{ "n,s,e", "n", "n,,s,", "n,s,,", "" }) {
+            MapperEvent event = parser.parse( message( exits ) );
+            assertEquals( exits, split( exits ), new ArrayList<String>( event.getExits() ) );
+        }
+    }
+
+}
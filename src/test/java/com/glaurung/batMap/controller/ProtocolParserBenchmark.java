@@ -0,0 +1,115 @@
+package com.glaurung.batMap.controller;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.glaurung.batMap.vo.MapperEvent;
+
+/**
+ * Runnable comparison of MapperProtocolParser against the split/replaceAll parsing that
+ * MapperPlugin.actionPerformed used to do. Checks that both produce the same values, then times them.
+ */
+public class ProtocolParserBenchmark {
+
+    private static final int MESSAGES = 2000;
+    private static final int ROUNDS = 200;
+    private static final String[] EXITS = { "north,south", "north,east,south,west", "east,west", "north,northeast,up",
+            "south", "enter tent,north", "", "down,up,west" };
+
+    public static void main( String[] args ) {
+        String[] messages = makeMessages( new Random( 42 ) );
+        MapperProtocolParser parser = new MapperProtocolParser();
+
+        for (String message : messages) {
+            Object[] legacy = legacyParse( message );
+            MapperEvent event = parser.parse( message );
+            if (legacy == null ? event != null : ! sameValues( legacy, event )) {
+                throw new IllegalStateException( "parsers disagree on " + message );
+            }
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            timeLegacy( messages );
+            timeParser( parser, messages );
+        }
+        long legacyNanos = timeLegacy( messages );
+        long parserNanos = timeParser( parser, messages );
+        int total = MESSAGES * ROUNDS;
+        System.out.println( String.format( "split/replaceAll: %8.1f ns/message", legacyNanos / (double) total ) );
+        System.out.println( String.format( "parser:           %8.1f ns/message", parserNanos / (double) total ) );
+    }
+
+    private static long timeLegacy( String[] messages ) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String message : messages) {
+                Object[] values = legacyParse( message );
+                sink += values == null ? 0 : values.length;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return time;
+    }
+
+    private static long timeParser( MapperProtocolParser parser, String[] messages ) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String message : messages) {
+                MapperEvent event = parser.parse( message );
+                sink += event == null ? 0 : event.getExits().size();
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return time;
+    }
+
+    /**
+     * What MapperPlugin.actionPerformed did before MapperProtocolParser
+     */
+    private static Object[] legacyParse( String input ) {
+        String[] values = input.split( ";;", - 1 );
+        if (values[0].equals( "BAT_MAPPER" ) && values.length == 9) {
+            boolean indoors = new Integer( values[4] ) != 0;
+            String longDesc = values[6].replaceAll( "\n", " " );
+            HashSet<String> exits = new HashSet<String>( Arrays.asList( values[7].split( "," ) ) );
+            return new Object[]{ values[1], values[2], values[3], indoors, values[5], longDesc, exits };
+        }
+        return null;
+    }
+
+    private static boolean sameValues( Object[] legacy, MapperEvent event ) {
+        if (event == null) {
+            return false;
+        }
+        Set<String> exits = new HashSet<String>( event.getExits() );
+        return legacy[0].equals( event.getAreaName() ) && legacy[1].equals( event.getRoomUID() )
+                && legacy[2].equals( event.getExitUsed() ) && legacy[3].equals( event.isIndoors() )
+                && legacy[4].equals( event.getShortDesc() ) && legacy[5].equals( event.getLongDesc() )
+                && legacy[6].equals( exits );
+    }
+
+    private static String[] makeMessages( Random random ) {
+        String[] messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder longDesc = new StringBuilder();
+            int lines = 2 + random.nextInt( 5 );
+            for (int line = 0; line < lines; line++) {
+                longDesc.append( "You see a long road stretching northward into the distance. As far as\n" );
+            }
+            messages[i] = "BAT_MAPPER;;sunderland;;$apr1$" + random.nextInt() + ";;road;;" + random.nextInt( 2 )
+                    + ";;The long road to Sunderland;;" + longDesc + ";;" + EXITS[random.nextInt( EXITS.length )] + ";;";
+        }
+        return messages;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+
+public class AreaCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everySaveThatWritesUpdatesTheCatalog() throws Exception {
+        String basedir = folder.newFolder( "conf" ).getParent();
+        AreaSaveObject town = TestAreas.sample( "town", 10 );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        AreaCatalog catalog = AreaCatalog.forBaseDir( basedir );
+        int generation = catalog.getGeneration();
+
+        // only notes, no descs or routes changed
+        town.getGraph().getVertices().iterator().next().setNotes( "a note" );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        assertTrue( catalog.getGeneration() > generation );
+
+        generation = catalog.getGeneration();
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        assertEquals( generation, catalog.getGeneration() );
+
+        List<AreaCatalog.Entry> entries = catalog.getEntries();
+        assertEquals( 1, entries.size() );
+        assertEquals( "town", entries.get( 0 ).getAreaName() );
+        assertEquals( 10, entries.get( 0 ).getRoomCount() );
+    }
+
+}
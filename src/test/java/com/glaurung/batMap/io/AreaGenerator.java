@@ -0,0 +1,404 @@
+package com.glaurung.batMap.io;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.glaurung.batMap.controller.MapperProtocolParser;
+import com.glaurung.batMap.gui.MapperLayout;
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Builds synthetic areas for stress tests and benchmarks: grid cities, long corridors with side rooms,
+ * mazes full of non compass exits and stacks of levels joined by up and down. Every exit has a way back.
+ * Areas can be saved with AreaDataPersister, or walked into a BAT_MAPPER message stream that maps the
+ * same rooms and exits when fed to the plugin. Same seed, same area.
+ * <pre>
+ * java AreaGenerator &lt;grid|corridor|maze|levels&gt; &lt;rooms&gt; &lt;basedir&gt; [protocol file]
+ * </pre>
+ */
+public class AreaGenerator {
+
+    public enum Shape {
+        GRID, CORRIDOR, MAZE, LEVELS
+    }
+
+    private static final int SPACING = 180;
+    private static final int LEVEL_OFFSET = 40 * SPACING;
+    private static final String[][] SPECIAL_EXITS = { { "enter crack", "out" }, { "climb ladder", "descend" },
+            { "squeeze through gap", "squeeze back" }, { "path", "path" }, { "enter tunnel", "leave tunnel" } };
+    private static final String[] WORDS = { "the", "a", "old", "narrow", "street", "cobbles", "lantern", "fountain",
+            "market", "shutters", "alley", "tower", "guard", "merchant", "puddle", "chimney", "gate", "tavern", "well",
+            "statue", "moss", "damp", "stone", "wall", "wind", "smell", "of", "smoke", "and", "is", "here", "north",
+            "dark", "corridor", "ceiling", "torch", "flickers", "shadows", "dust", "ancient", "carvings" };
+
+    private final Random random;
+
+    public AreaGenerator( long seed ) {
+        this.random = new Random( seed );
+    }
+
+    public static void main( String[] args ) throws IOException {
+        if (args.length < 3) {
+            System.out.println( "usage: AreaGenerator <grid|corridor|maze|levels> <rooms> <basedir> [protocol file]" );
+            return;
+        }
+        Shape shape = Shape.valueOf( args[0].toUpperCase() );
+        int rooms = Integer.parseInt( args[1] );
+        AreaGenerator generator = new AreaGenerator( 42 );
+        AreaSaveObject area = generator.generate( shape.name().toLowerCase() + rooms, shape, rooms );
+        generator.write( args[2], area );
+        System.out.println( "wrote " + area.getGraph().getVertexCount() + " rooms, " + area.getGraph().getEdgeCount() + " exits" );
+        if (args.length > 3) {
+            try (Writer out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( new File( args[3] ) ), Charset.forName( "UTF-8" ) ) )) {
+                int count = generator.protocol( area, out );
+                System.out.println( "wrote " + count + " protocol messages" );
+            }
+        }
+    }
+
+    /**
+     * @param areaName
+     * @param shape
+     * @param rooms    about how many rooms, shapes round it to fit
+     * @return area with rooms, exits and locations, first room being the entrance
+     */
+    public AreaSaveObject generate( String areaName, Shape shape, int rooms ) {
+        Builder builder = new Builder( areaName );
+        switch (shape) {
+            case GRID:
+                grid( builder, rooms );
+                break;
+            case CORRIDOR:
+                corridor( builder, rooms );
+                break;
+            case MAZE:
+                maze( builder, rooms );
+                break;
+            case LEVELS:
+                levels( builder, rooms );
+                break;
+        }
+        builder.first.setAreaEntrance( true );
+        return builder.saveObject;
+    }
+
+    public void write( String basedir, AreaSaveObject area ) throws IOException {
+        new File( new File( basedir, "conf" ), "batMapAreas" ).mkdirs();
+        MapperLayout layout = new MapperLayout( area.getGraph() );
+        layout.displayLoadedData( area );
+        AreaDataPersister.save( basedir, area.getGraph(), layout );
+    }
+
+    /**
+     * @param area
+     * @return BAT_MAPPER messages that map the area, see {@link #protocol(AreaSaveObject, Writer)}
+     */
+    public List<String> protocol( AreaSaveObject area ) {
+        final List<String> messages = new ArrayList<String>();
+        try {
+            walk( area, new Sink() {
+                @Override
+                public void message( String message ) {
+                    messages.add( message );
+                }
+            } );
+        } catch (IOException e) {
+            throw new IllegalStateException( e );
+        }
+        return messages;
+    }
+
+    /**
+     * Writes the messages one per line, newlines inside descs escaped as \n, without keeping them in memory.
+     *
+     * @param area
+     * @param out
+     * @return number of messages written
+     */
+    public int protocol( AreaSaveObject area, final Writer out ) throws IOException {
+        final int[] count = { 0 };
+        walk( area, new Sink() {
+            @Override
+            public void message( String message ) throws IOException {
+                out.write( message.replace( "\n", "\\n" ) );
+                out.write( '\n' );
+                count[0]++;
+            }
+        } );
+        return count[0];
+    }
+
+    private interface Sink {
+        void message( String message ) throws IOException;
+    }
+
+    /**
+     * Walks every exit of the area depth first from the entrance, stepping back after each exit, and
+     * ends by leaving to the realm map. Feeding these messages to the plugin maps the same area.
+     */
+    private void walk( AreaSaveObject area, Sink messages ) throws IOException {
+        SparseMultigraph<Room, Exit> graph = area.getGraph();
+        Room entrance = null;
+        for (Room room : graph.getVertices()) {
+            if (room.isAreaEntrance()) {
+                entrance = room;
+            }
+        }
+        if (entrance == null) {
+            return;
+        }
+        messages.message( message( entrance, "enter" ) );
+
+        Set<Room> visited = new HashSet<Room>();
+        visited.add( entrance );
+        ArrayDeque<Room> path = new ArrayDeque<Room>();
+        ArrayDeque<Iterator<Exit>> exits = new ArrayDeque<Iterator<Exit>>();
+        path.push( entrance );
+        exits.push( new ArrayList<Exit>( graph.getOutEdges( entrance ) ).iterator() );
+        while (! path.isEmpty()) {
+            Room room = path.peek();
+            if (! exits.peek().hasNext()) {
+                path.pop();
+                exits.pop();
+                if (! path.isEmpty()) {
+                    messages.message( message( path.peek(), wayBack( graph, room, path.peek() ).getExit() ) );
+                }
+                continue;
+            }
+            Exit exit = exits.peek().next();
+            Room next = graph.getOpposite( room, exit );
+            messages.message( message( next, exit.getExit() ) );
+            if (visited.add( next )) {
+                path.push( next );
+                exits.push( new ArrayList<Exit>( graph.getOutEdges( next ) ).iterator() );
+            } else {
+                messages.message( message( room, wayBack( graph, next, room ).getExit() ) );
+            }
+        }
+        messages.message( MapperProtocolParser.CHANNEL_PREFIX + ";;" + MapperProtocolParser.EXIT_AREA_MESSAGE );
+    }
+
+    private String message( Room room, String exitUsed ) {
+        StringBuilder exits = new StringBuilder();
+        for (String exit : room.getExits()) {
+            if (exits.length() > 0) {
+                exits.append( ',' );
+            }
+            exits.append( exit );
+        }
+        return MapperProtocolParser.CHANNEL_PREFIX + ";;" + room.getArea().getName() + ";;" + room.getId() + ";;" + exitUsed
+                + ";;" + ( room.isIndoors() ? 1 : 0 ) + ";;" + room.getShortDesc() + ";;" + room.getLongDesc() + ";;" + exits + ";;";
+    }
+
+    private Exit wayBack( SparseMultigraph<Room, Exit> graph, Room from, Room to ) {
+        for (Exit exit : graph.getOutEdges( from )) {
+            if (graph.getOpposite( from, exit ).equals( to )) {
+                return exit;
+            }
+        }
+        throw new IllegalStateException( "no way back from " + from.getId() + " to " + to.getId() );
+    }
+
+    private void grid( Builder builder, int rooms ) {
+        int side = (int) Math.ceil( Math.sqrt( rooms ) );
+        Room[][] cells = builder.layer( side, side, 0, false );
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                if (x + 1 < side) {
+                    builder.connect( cells[x][y], cells[x + 1][y], "east", "west" );
+                }
+                if (y + 1 < side) {
+                    builder.connect( cells[x][y], cells[x][y + 1], "south", "north" );
+                }
+                if (x + 1 < side && y + 1 < side && random.nextInt( 10 ) == 0) {
+                    builder.connect( cells[x][y], cells[x + 1][y + 1], "southeast", "northwest" );
+                }
+            }
+        }
+    }
+
+    private void corridor( Builder builder, int rooms ) {
+        int length = Math.max( 1, rooms * 4 / 5 );
+        Room previous = null;
+        for (int x = 0; x < length; x++) {
+            Room room = builder.room( x * SPACING, 0, true );
+            if (previous != null) {
+                builder.connect( previous, room, "east", "west" );
+            }
+            previous = room;
+        }
+        List<Room> corridor = new ArrayList<Room>( builder.saveObject.getGraph().getVertices() );
+        for (int i = length; i < rooms; i++) {
+            Room at = corridor.get( random.nextInt( corridor.size() ) );
+            Point2D location = builder.saveObject.getLocations().get( at );
+            boolean north = random.nextBoolean();
+            String way = north ? "north" : "south";
+            if (! at.getExits().contains( way )) {
+                Room side = builder.room( location.getX(), location.getY() + ( north ? - SPACING : SPACING ), true );
+                builder.connect( at, side, way, north ? "south" : "north" );
+            }
+        }
+    }
+
+    private void maze( Builder builder, int rooms ) {
+        int side = (int) Math.ceil( Math.sqrt( rooms ) );
+        Room[][] cells = builder.layer( side, side, 0, true );
+        boolean[][] carved = new boolean[side][side];
+        int[] dx = { 1, - 1, 0, 0 };
+        int[] dy = { 0, 0, 1, - 1 };
+        String[] ways = { "east", "west", "south", "north" };
+        String[] backs = { "west", "east", "north", "south" };
+        ArrayDeque<int[]> stack = new ArrayDeque<int[]>();
+        stack.push( new int[] { 0, 0 } );
+        carved[0][0] = true;
+        List<Integer> directions = new ArrayList<Integer>( Arrays.asList( 0, 1, 2, 3 ) );
+        while (! stack.isEmpty()) {
+            int[] cell = stack.peek();
+            Collections.shuffle( directions, random );
+            boolean moved = false;
+            for (int d : directions) {
+                int x = cell[0] + dx[d];
+                int y = cell[1] + dy[d];
+                if (x < 0 || y < 0 || x >= side || y >= side || carved[x][y]) {
+                    continue;
+                }
+                carved[x][y] = true;
+                Room from = cells[cell[0]][cell[1]];
+                String[] special = SPECIAL_EXITS[random.nextInt( SPECIAL_EXITS.length )];
+                if (random.nextInt( 4 ) == 0 && ! from.getExits().contains( special[0] ) && ! cells[x][y].getExits().contains( special[1] )) {
+                    builder.connect( from, cells[x][y], special[0], special[1] );
+                } else {
+                    builder.connect( cells[cell[0]][cell[1]], cells[x][y], ways[d], backs[d] );
+                }
+                stack.push( new int[] { x, y } );
+                moved = true;
+                break;
+            }
+            if (! moved) {
+                stack.pop();
+            }
+        }
+    }
+
+    private void levels( Builder builder, int rooms ) {
+        int levels = Math.max( 2, (int) Math.round( Math.cbrt( rooms ) / 2 ) );
+        int side = (int) Math.ceil( Math.sqrt( rooms / (double) levels ) );
+        Room[][] below = null;
+        for (int level = 0; level < levels; level++) {
+            Room[][] cells = builder.layer( side, side, level * LEVEL_OFFSET, level > 0 );
+            for (int x = 0; x < side; x++) {
+                for (int y = 0; y < side; y++) {
+                    if (x + 1 < side) {
+                        builder.connect( cells[x][y], cells[x + 1][y], "east", "west" );
+                    }
+                    if (y + 1 < side) {
+                        builder.connect( cells[x][y], cells[x][y + 1], "south", "north" );
+                    }
+                }
+            }
+            if (below != null) {
+                for (int stairs = 0; stairs < Math.max( 1, side / 4 ); stairs++) {
+                    int x = random.nextInt( side );
+                    int y = random.nextInt( side );
+                    if (! below[x][y].getExits().contains( "up" )) {
+                        builder.connect( below[x][y], cells[x][y], "up", "down" );
+                    }
+                }
+            }
+            below = cells;
+        }
+    }
+
+    private String sentence( int words ) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append( ' ' );
+            }
+            text.append( WORDS[random.nextInt( WORDS.length )] );
+        }
+        return text.toString();
+    }
+
+    private class Builder {
+        final Area area;
+        final AreaSaveObject saveObject = new AreaSaveObject();
+        final Map<Room, Point2D> locations = saveObject.getLocations();
+        Room first;
+        int count = 0;
+
+        Builder( String areaName ) {
+            this.area = new Area( areaName );
+        }
+
+        Room room( double x, double y, boolean indoors ) {
+            String id = String.format( "%08x%08x", random.nextInt(), count++ );
+            Room room = new Room( sentence( 2 + random.nextInt( 4 ) ), id, area );
+            // protocol long descs are a few lines, 300-700 characters
+            room.setLongDesc( sentence( 50 + random.nextInt( 70 ) ) );
+            room.setIndoors( indoors );
+            saveObject.getGraph().addVertex( room );
+            locations.put( room, new Point2D.Double( x, y ) );
+            if (first == null) {
+                first = room;
+            }
+            return room;
+        }
+
+        Room[][] layer( int width, int height, double offsetX, boolean indoors ) {
+            Room[][] cells = new Room[width][height];
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    cells[x][y] = room( offsetX + x * SPACING, y * SPACING, indoors || random.nextInt( 5 ) == 0 );
+                }
+            }
+            return cells;
+        }
+
+        void connect( Room from, Room to, String way, String back ) {
+            from.addExit( way );
+            to.addExit( back );
+            addEdge( way, from, to );
+            addEdge( back, to, from );
+        }
+
+        // Exit equals by name but hashes by identity, so in big areas a new exit now and then looks like
+        // one already in the graph. Another instance gets another hash.
+        void addEdge( String way, Room from, Room to ) {
+            for (int tries = 0; tries < 10; tries++) {
+                try {
+                    if (saveObject.getGraph().addEdge( new Exit( way ), new Pair<Room>( from, to ), EdgeType.DIRECTED )) {
+                        return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // same exit name with other endpoints already in graph, try again
+                }
+            }
+            throw new IllegalStateException( "could not add exit " + way + " from " + from.getId() );
+        }
+    }
+
+}
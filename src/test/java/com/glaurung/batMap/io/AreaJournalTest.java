@@ -0,0 +1,149 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class AreaJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String basedir;
+    private AreaJournal journal;
+    private File areaFile;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        basedir = folder.newFolder( "conf", "batMapAreas" ).getParentFile().getParent();
+        journal = AreaJournal.forBaseDir( basedir );
+        areaFile = AreaDataPersister.getAreaFile( basedir, "town" );
+        journalFile = AreaJournal.getJournalFile( areaFile );
+    }
+
+    @Test
+    public void changesAreReplayedOnLoad() throws Exception {
+        AreaSaveObject area = TestAreas.sample( "town", 10 );
+        assertEquals( AreaJournal.CHANGED_ALL, journal.save( areaFile, snapshot( area ) ) );
+        assertFalse( journalFile.exists() );
+
+        change( area );
+        AreaSnapshot changed = snapshot( area );
+        assertTrue( journal.save( areaFile, changed ) != 0 );
+        assertTrue( journalFile.exists() );
+        assertEquals( 0, journal.save( areaFile, changed ) );
+
+        TestAreas.assertSameArea( changed, snapshot( journal.load( areaFile ) ) );
+    }
+
+    @Test
+    public void batchCutShortIsIgnored() throws Exception {
+        AreaSaveObject area = TestAreas.sample( "town", 10 );
+        journal.save( areaFile, snapshot( area ) );
+        room( area, "id2" ).setNotes( "first batch" );
+        AreaSnapshot first = snapshot( area );
+        journal.save( areaFile, first );
+        long firstLength = journalFile.length();
+        change( area );
+        AreaSnapshot second = snapshot( area );
+
+        // crash right before the commit, then in the middle of a record
+        for (int cut : new int[]{ 1, 2 }) {
+            journal.save( areaFile, second );
+            long secondLength = journalFile.length();
+            try (RandomAccessFile file = new RandomAccessFile( journalFile, "rw" )) {
+                file.setLength( cut == 1 ? secondLength - 1 : firstLength + ( secondLength - firstLength ) / 2 );
+            }
+            TestAreas.assertSameArea( first, snapshot( journal.load( areaFile ) ) );
+            assertEquals( firstLength, journalFile.length() );
+        }
+
+        // the save after a crash must not end up behind the torn batch
+        journal.save( areaFile, second );
+        room( area, "id4" ).setNotes( "saved after the crash" );
+        AreaSnapshot afterCrash = snapshot( area );
+        journal.save( areaFile, afterCrash );
+        TestAreas.assertSameArea( afterCrash, snapshot( journal.load( areaFile ) ) );
+    }
+
+    @Test
+    public void compactionKeepsTheArea() throws Exception {
+        AreaSaveObject area = TestAreas.sample( "town", 200 );
+        journal.save( areaFile, snapshot( area ) );
+        AreaSnapshot last = null;
+        for (int batch = 0; batch < 50 && ! compactionDue(); batch++) {
+            for (Room room : area.getGraph().getVertices()) {
+                room.setLongDesc( "Batch " + batch + " changed this room, " + room.getId() + ", again." );
+            }
+            last = snapshot( area );
+            journal.save( areaFile, last );
+        }
+        assertTrue( compactionDue() );
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journalFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep( 20 );
+        }
+        assertFalse( "journal was not compacted", journalFile.exists() );
+        assertTrue( new File( areaFile.getPath() + ".0.bk" ).exists() );
+        TestAreas.assertSameArea( last, snapshot( journal.load( areaFile ) ) );
+    }
+
+    private boolean compactionDue() {
+        return journalFile.length() >= 64 * 1024 && journalFile.length() * 2 >= areaFile.length();
+    }
+
+    /**
+     * Changes a desc, moves a room, removes a room with its exits, adds a room with an exit and removes
+     * an exit, so every kind of journal record gets written.
+     */
+    private static void change( AreaSaveObject area ) {
+        SparseMultigraph<Room, Exit> graph = area.getGraph();
+        room( area, "id1" ).setLongDesc( "The room has been redecorated." );
+        area.getLocations().put( room( area, "id3" ), new Point2D.Double( - 90, 450 ) );
+        Room removed = room( area, "id5" );
+        graph.removeVertex( removed );
+        area.getLocations().remove( removed );
+
+        Room added = new Room( "Cellar", "cellar", room( area, "id0" ).getArea() );
+        added.setLongDesc( "Damp and dark." );
+        added.addExit( "up" );
+        graph.addVertex( added );
+        area.getLocations().put( added, new Point2D.Double( 0, 180 ) );
+        graph.addEdge( new Exit( "up" ), new Pair<Room>( added, room( area, "id0" ) ), EdgeType.DIRECTED );
+
+        graph.removeEdge( graph.getOutEdges( room( area, "id7" ) ).iterator().next() );
+    }
+
+    private static Room room( AreaSaveObject area, String id ) {
+        for (Room room : area.getGraph().getVertices()) {
+            if (room.getId().equals( id )) {
+                return room;
+            }
+        }
+        throw new IllegalArgumentException( "no room " + id );
+    }
+
+    private static AreaSnapshot snapshot( AreaSaveObject area ) {
+        return TestAreas.snapshot( "town", area );
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.glaurung.batMap.io;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Runnable comparison of save and load times and file sizes between java serialization (the pre v2
+ * .batmap format) and BinaryAreaFormat, for a 5000 room grid area. Also checks that both load back the
+ * same rooms and exits.
+ */
+public class AreaPersistenceBenchmark {
+
+    private static final int SIDE = 71; // 71 * 71 = 5041 rooms
+    private static final int ROUNDS = 10;
+
+    public static void main( String[] args ) throws Exception {
+        AreaSaveObject area = makeArea( new Random( 42 ) );
+        System.out.println( "rooms: " + area.getGraph().getVertexCount() + ", exits: " + area.getGraph().getEdgeCount() );
+
+        byte[] legacy = null;
+        byte[] binary = null;
+        long legacySave = 0, binarySave = 0, legacyLoad = 0, binaryLoad = 0;
+        for (int round = 0; round < ROUNDS + 2; round++) {
+            boolean measure = round >= 2;
+
+            long start = System.nanoTime();
+            legacy = writeLegacy( area );
+            long saved = System.nanoTime();
+            AreaSaveObject legacyLoaded = AreaDataPersister.readData( new BufferedInputStream( new ByteArrayInputStream( legacy ) ) );
+            long loaded = System.nanoTime();
+            if (measure) {
+                legacySave += saved - start;
+                legacyLoad += loaded - saved;
+            }
+
+            start = System.nanoTime();
+            binary = writeBinary( area );
+            saved = System.nanoTime();
+            AreaSaveObject binaryLoaded = AreaDataPersister.readData( new BufferedInputStream( new ByteArrayInputStream( binary ) ) );
+            loaded = System.nanoTime();
+            if (measure) {
+                binarySave += saved - start;
+                binaryLoad += loaded - saved;
+            }
+
+            check( legacyLoaded, binaryLoaded );
+        }
+
+        System.out.println( String.format( "serialized: %8d bytes, save %7.2f ms, load %7.2f ms", legacy.length,
+                legacySave / ROUNDS / 1e6, legacyLoad / ROUNDS / 1e6 ) );
+        System.out.println( String.format( "binary v2:  %8d bytes, save %7.2f ms, load %7.2f ms", binary.length,
+                binarySave / ROUNDS / 1e6, binaryLoad / ROUNDS / 1e6 ) );
+
+        DataInputStream header = new DataInputStream( new ByteArrayInputStream( binary ) );
+        header.readInt();
+        BinaryAreaFormat.Header info = BinaryAreaFormat.readHeader( header );
+        System.out.println( "header: " + info.getAreaName() + ", " + info.getRoomCount() + " rooms, entrance " + info.getEntranceRoomId() );
+    }
+
+    private static byte[] writeLegacy( AreaSaveObject area ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream( bytes )) {
+            out.writeObject( area );
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] writeBinary( AreaSaveObject area ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( bytes ) )) {
+            BinaryAreaFormat.write( area, "benchmark", out );
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void check( AreaSaveObject legacy, AreaSaveObject binary ) {
+        if (legacy.getGraph().getVertexCount() != binary.getGraph().getVertexCount()
+                || legacy.getGraph().getEdgeCount() != binary.getGraph().getEdgeCount()) {
+            throw new IllegalStateException( "formats loaded different graphs" );
+        }
+        for (Room room : binary.getGraph().getVertices()) {
+            Point2D location = binary.getLocations().get( room );
+            if (location == null || ! location.equals( legacy.getLocations().get( room ) )) {
+                throw new IllegalStateException( "location differs for room " + room.getId() );
+            }
+        }
+    }
+
+    private static AreaSaveObject makeArea( Random random ) {
+        Area area = new Area( "benchmark" );
+        AreaSaveObject saveObject = new AreaSaveObject();
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Room[][] grid = new Room[SIDE][SIDE];
+        for (int x = 0; x < SIDE; x++) {
+            for (int y = 0; y < SIDE; y++) {
+                Room room = new Room( "Street " + x + "," + y, "$apr1$" + random.nextLong(), area );
+                room.setLongDesc( "The street is lined with old stone houses, their shutters closed against the wind. "
+                        + "Puddles gather between the cobbles and a cat watches you from a window sill " + random.nextInt( 100 ) + "." );
+                room.setIndoors( random.nextInt( 5 ) == 0 );
+                room.setAreaEntrance( x == 0 && y == 0 );
+                graph.addVertex( room );
+                saveObject.getLocations().put( room, new Point2D.Double( x * 180, y * 180 ) );
+                grid[x][y] = room;
+            }
+        }
+        for (int x = 0; x < SIDE; x++) {
+            for (int y = 0; y < SIDE; y++) {
+                if (x + 1 < SIDE) {
+                    connect( graph, grid[x][y], grid[x + 1][y], "east", "west" );
+                }
+                if (y + 1 < SIDE) {
+                    connect( graph, grid[x][y], grid[x][y + 1], "south", "north" );
+                }
+            }
+        }
+        return saveObject;
+    }
+
+    private static void connect( SparseMultigraph<Room, Exit> graph, Room from, Room to, String exit, String back ) {
+        from.addExit( exit );
+        to.addExit( back );
+        graph.addEdge( new Exit( exit ), new Pair<Room>( from, to ), EdgeType.DIRECTED );
+        graph.addEdge( new Exit( back ), new Pair<Room>( to, from ), EdgeType.DIRECTED );
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+
+public class BinaryAreaFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        AreaSaveObject area = TestAreas.sample( "round trip", 20 );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream( bytes )) {
+            BinaryAreaFormat.write( area, "round trip", out );
+        }
+
+        AreaSaveObject loaded = AreaDataPersister.readData( new BufferedInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+        TestAreas.assertSameArea( area, loaded );
+
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+        assertEquals( BinaryAreaFormat.MAGIC, in.readInt() );
+        BinaryAreaFormat.Header header = BinaryAreaFormat.readHeader( in );
+        assertEquals( BinaryAreaFormat.VERSION, header.getVersion() );
+        assertEquals( "round trip", header.getAreaName() );
+        assertEquals( 20, header.getRoomCount() );
+        assertEquals( area.getGraph().getEdgeCount(), header.getExitCount() );
+        assertEquals( "id0", header.getEntranceRoomId() );
+    }
+
+    @Test
+    public void legacyFileIsConvertedOnSave() throws Exception {
+        String basedir = folder.getRoot().getPath();
+        AreaSaveObject area = TestAreas.sample( "legacy", 20 );
+        File areaFile = AreaDataPersister.getAreaFile( basedir, "legacy" );
+        areaFile.getParentFile().mkdirs();
+        try (ObjectOutputStream out = new ObjectOutputStream( new FileOutputStream( areaFile ) )) {
+            out.writeObject( area );
+        }
+        assertNull( AreaDataPersister.loadHeader( basedir, "legacy" ) );
+
+        AreaSaveObject loaded = AreaDataPersister.readArea( basedir, "legacy" );
+        TestAreas.assertSameArea( area, loaded );
+
+        loaded.setFileName( areaFile.getPath() );
+        AreaDataPersister.saveData( loaded, "legacy" );
+        assertEquals( 20, AreaDataPersister.loadHeader( basedir, "legacy" ).getRoomCount() );
+        try (DataInputStream in = new DataInputStream( new FileInputStream( areaFile ) )) {
+            assertEquals( BinaryAreaFormat.MAGIC, in.readInt() );
+        }
+        TestAreas.assertSameArea( area, read( areaFile ) );
+
+        try (DataInputStream in = new DataInputStream( new FileInputStream( areaFile.getPath() + ".0.bk" ) )) {
+            assertNotEquals( BinaryAreaFormat.MAGIC, in.readInt() );
+        }
+    }
+
+    private static AreaSaveObject read( File file ) throws IOException, ClassNotFoundException {
+        try (BufferedInputStream in = new BufferedInputStream( new FileInputStream( file ) )) {
+            return AreaDataPersister.readData( in );
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Room;
+
+public class SearchIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savingAnAreaRewritesOnlyItsIndexFile() throws Exception {
+        String basedir = folder.newFolder( "first", "conf" ).getParent();
+        AreaSaveObject town = TestAreas.sample( "town", 10 );
+        AreaSaveObject forest = TestAreas.sample( "forest", 10 );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "forest", forest ) );
+
+        File indexDir = new File( basedir, "conf/batMapSearch" );
+        File forestIndex = new File( indexDir, "forest.idx" );
+        assertTrue( new File( indexDir, "town.idx" ).isFile() );
+        byte[] forestBefore = Files.readAllBytes( forestIndex.toPath() );
+        assertTrue( forestIndex.setLastModified( 1000 ) );
+
+        Room room = town.getGraph().getVertices().iterator().next();
+        room.setLongDesc( "A fountain splashes in the middle of the square." );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+
+        assertEquals( 1000, forestIndex.lastModified() );
+        assertArrayEquals( forestBefore, Files.readAllBytes( forestIndex.toPath() ) );
+        List<Room> found = SearchIndex.forBaseDir( basedir ).search( "Fountain" );
+        assertEquals( 1, found.size() );
+        assertEquals( room.getId(), found.get( 0 ).getId() );
+        assertEquals( "town", found.get( 0 ).getArea().getName() );
+    }
+
+    @Test
+    public void indexIsReadBackFromItsFiles() throws Exception {
+        File first = folder.newFolder( "saved", "conf" ).getParentFile();
+        AreaDataPersister.save( first.getPath(), TestAreas.snapshot( "town", TestAreas.sample( "town", 10 ) ) );
+        AreaDataPersister.save( first.getPath(), TestAreas.snapshot( "forest", TestAreas.sample( "forest", 12 ) ) );
+        File second = folder.newFolder( "copy" );
+        FileUtils.copyDirectory( first, second, true );
+
+        SearchIndex copy = SearchIndex.forBaseDir( second.getPath() );
+        assertEquals( 2, copy.getAreaCount() );
+        assertEquals( 2, copy.search( "number 1." ).size() );
+        assertEquals( 12 + 10, copy.search( "plain room" ).size() );
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SettingsStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lastValuePutIsWrittenAndLoaded() throws Exception {
+        File conf = folder.newFolder( "conf" );
+        SettingsStore store = SettingsStore.forBaseDir( conf.getParent() );
+        ArrayList<String> value = new ArrayList<String>( Arrays.asList( "a" ) );
+        store.put( "test.dat", value );
+        value.add( "changed after put" );
+        store.put( "test.dat", new ArrayList<String>( Arrays.asList( "b" ) ) );
+        assertFalse( new File( conf, "test.dat" ).exists() );
+        assertEquals( Arrays.asList( "b" ), store.load( "test.dat" ) );
+
+        store.flush();
+        assertTrue( new File( conf, "test.dat" ).exists() );
+        assertFalse( new File( conf, "test.dat.tmp" ).exists() );
+        assertEquals( Arrays.asList( "b" ), store.load( "test.dat" ) );
+    }
+
+    @Test
+    public void putsRacingFlushesEndWithTheLastValue() throws Exception {
+        File conf = folder.newFolder( "conf" );
+        final SettingsStore store = SettingsStore.forBaseDir( conf.getParent() );
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                while (! done.get()) {
+                    store.flush();
+                }
+            }
+        } );
+        flusher.start();
+        for (int i = 0; i < 2000; i++) {
+            store.put( "test.dat", Integer.valueOf( i ) );
+            assertEquals( i, store.load( "test.dat" ) );
+        }
+        done.set( true );
+        flusher.join();
+        store.flush();
+        assertEquals( 1999, store.load( "test.dat" ) );
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.Map;
+
+import org.apache.commons.collections15.Transformer;
+
+import com.glaurung.batMap.vo.Area;
+import com.glaurung.batMap.vo.AreaSaveObject;
+import com.glaurung.batMap.vo.Exit;
+import com.glaurung.batMap.vo.Room;
+
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Small areas for the persistence tests, and a check that two areas hold the same saved values.
+ */
+class TestAreas {
+
+    /**
+     * @return a row of rooms joined both ways, using every value the formats save
+     */
+    static AreaSaveObject sample( String areaName, int rooms ) {
+        Area area = new Area( areaName );
+        AreaSaveObject saveObject = new AreaSaveObject();
+        SparseMultigraph<Room, Exit> graph = saveObject.getGraph();
+        Room previous = null;
+        for (int i = 0; i < rooms; i++) {
+            Room room = new Room( "Room " + i, "id" + i, area );
+            room.setLongDesc( "A plain room, number " + i + "." );
+            room.setAreaEntrance( i == 0 );
+            room.setIndoors( i % 2 == 0 );
+            if (i % 3 == 0) {
+                room.setNotes( "notes of " + i );
+                room.setLabel( "label" + i );
+                room.setColor( new Color( 10 * i % 256, 20, 30, 200 ) );
+            }
+            graph.addVertex( room );
+            saveObject.getLocations().put( room, new Point2D.Double( i * 180, i % 4 * 90.5 ) );
+            if (previous != null) {
+                previous.addExit( "east" );
+                room.addExit( "west" );
+                previous.useExit( "east" );
+                graph.addEdge( new Exit( "east" ), new Pair<Room>( previous, room ), EdgeType.DIRECTED );
+                graph.addEdge( new Exit( "west" ), new Pair<Room>( room, previous ), EdgeType.DIRECTED );
+            }
+            previous = room;
+        }
+        if (rooms > 2) {
+            Room first = graph.getVertices().iterator().next();
+            graph.addEdge( new Exit( "portal" ), new Pair<Room>( first, previous ), EdgeType.UNDIRECTED );
+        }
+        return saveObject;
+    }
+
+    static AreaSnapshot snapshot( String areaName, AreaSaveObject saveObject ) {
+        final Map<Room, Point2D> locations = saveObject.getLocations();
+        return AreaSnapshot.of( areaName, saveObject.getGraph(), new Transformer<Room, Point2D>() {
+            @Override
+            public Point2D transform( Room room ) {
+                return locations.get( room );
+            }
+        } );
+    }
+
+    static void assertSameArea( AreaSaveObject expected, AreaSaveObject actual ) {
+        assertSameArea( snapshot( "", expected ), snapshot( "", actual ) );
+    }
+
+    static void assertSameArea( AreaSnapshot expected, AreaSnapshot actual ) {
+        assertEquals( expected.getRooms().keySet(), actual.getRooms().keySet() );
+        for (AreaSnapshot.RoomState room : expected.getRooms().values()) {
+            AreaSnapshot.RoomState other = actual.getRooms().get( room.id );
+            assertNotNull( room.id, other );
+            assertTrue( "values of " + room.id, room.sameValues( other ) );
+            assertTrue( "location of " + room.id, room.sameLocation( other ) );
+        }
+        assertEquals( expected.getExits(), actual.getExits() );
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.glaurung.batMap.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glaurung.batMap.vo.AreaSaveObject;
+
+public class WorldGraphTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String basedir;
+    private AreaSaveObject town;
+    private AreaSaveObject forest;
+
+    @Before
+    public void setUp() throws Exception {
+        basedir = folder.newFolder( "conf" ).getParent();
+        town = TestAreas.sample( "town", 5 );
+        forest = TestAreas.sample( "forest", 5 );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "forest", forest ) );
+    }
+
+    @Test
+    public void transitionBetweenMappedAreasIsRoutedAfterUnchangedSaves() throws Exception {
+        WorldGraph world = WorldGraph.forBaseDir( basedir );
+        Map<String, List<String>> start = Collections.singletonMap( "id4", Collections.<String>emptyList() );
+        assertNull( world.findRoute( "town", start, "label3" ) );
+
+        world.recordTransition( "town", "id4", "gate", "forest", "id0" );
+        assertTrue( world.isStale( "town" ) );
+        assertTrue( world.isStale( "forest" ) );
+
+        // nothing in either area changed, the journal writes nothing
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "town", town ) );
+        AreaDataPersister.save( basedir, TestAreas.snapshot( "forest", forest ) );
+        assertFalse( world.isStale( "town" ) );
+        assertFalse( world.isStale( "forest" ) );
+        assertEquals( Arrays.asList( "gate", "portal", "west" ), world.findRoute( "town", start, "label3" ) );
+    }
+
+    @Test
+    public void staleRoutesAreUpdatedWithoutSaving() throws Exception {
+        WorldGraph world = WorldGraph.forBaseDir( basedir );
+        Map<String, List<String>> start = Collections.singletonMap( "id4", Collections.<String>emptyList() );
+        world.recordTransition( "town", "id4", "gate", "forest", "id0" );
+        world.recordTransition( "forest", "id0", "road", "village", "square" );
+
+        AreaDataPersister.updateStaleRoutes( basedir );
+        assertFalse( world.isStale( "town" ) );
+        assertFalse( world.isStale( "forest" ) );
+        // never saved, its first save works out its routes
+        assertTrue( world.isStale( "village" ) );
+        assertEquals( Arrays.asList( "gate", "portal", "west" ), world.findRoute( "town", start, "label3" ) );
+    }
+
+}